@@ -0,0 +1,68 @@
+package com.poc.pdf.controller;
+
+import com.poc.pdf.service.BadRequestException;
+import com.poc.pdf.service.ConflictException;
+import com.poc.pdf.service.NotFoundException;
+import com.poc.pdf.service.OverloadedException;
+import com.poc.pdf.service.PayloadTooLargeException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    /**
+     * A workflow was changed by another request between being read and saved; the client may reload and retry.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ProblemDetail handleConcurrentUpdate(OptimisticLockingFailureException e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, "The workflow was modified concurrently, reload it and try again");
+    }
+
+    /**
+     * The workflow is not in a state that allows the request yet, typically while it is being prepared.
+     */
+    @ExceptionHandler(ConflictException.class)
+    public ProblemDetail handleConflict(ConflictException e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+    }
+
+    /**
+     * The request cannot be carried out as sent; retrying it unchanged will not help.
+     */
+    @ExceptionHandler(BadRequestException.class)
+    public ProblemDetail handleBadRequest(BadRequestException e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+
+    /**
+     * The request names something that does not exist, such as a page past the end of the document.
+     */
+    @ExceptionHandler(NotFoundException.class)
+    public ProblemDetail handleNotFound(NotFoundException e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.NOT_FOUND, e.getMessage());
+    }
+
+    /**
+     * The request holds more than the server agrees to keep, however long the client waits.
+     */
+    @ExceptionHandler(PayloadTooLargeException.class)
+    public ProblemDetail handleTooLarge(PayloadTooLargeException e) {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+    }
+
+    /**
+     * The server is saturated; tells the client when to retry.
+     */
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<ProblemDetail> handleOverload(OverloadedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(ProblemDetail.forStatusAndDetail(HttpStatus.TOO_MANY_REQUESTS, e.getMessage()));
+    }
+}
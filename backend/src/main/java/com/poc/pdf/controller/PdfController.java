@@ -1,21 +1,48 @@
 package com.poc.pdf.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.poc.pdf.model.AddFieldsRequest;
+import com.poc.pdf.model.BatchExtractionResult;
+import com.poc.pdf.model.ExtractionEvent;
 import com.poc.pdf.model.ExtractionResult;
+import com.poc.pdf.model.ImageFormat;
+import com.poc.pdf.model.PdfField;
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.service.AdmissionService;
+import com.poc.pdf.service.AdmissionService.Operation;
+import com.poc.pdf.service.AdmissionService.Permit;
+import com.poc.pdf.service.BatchExtractionService;
+import com.poc.pdf.service.BatchExtractionService.BatchSource;
+import com.poc.pdf.service.ExtractionSessionService;
+import com.poc.pdf.service.ExtractionSessionService.SessionExtraction;
+import com.poc.pdf.service.PageImageEncoder;
 import com.poc.pdf.service.PdfFieldAdderService;
 import com.poc.pdf.service.PdfFieldExtractorService;
 import com.poc.pdf.service.PdfFieldExtractorService.ExtractionData;
+import com.poc.pdf.service.PdfFieldExtractorService.ExtractionListener;
+import com.poc.pdf.service.PdfMetrics;
+import com.poc.pdf.service.PdfMetrics.Stage;
+import com.poc.pdf.service.UploadStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/pdf")
@@ -24,48 +51,245 @@ public class PdfController {
 
     private final PdfFieldExtractorService extractorService;
     private final PdfFieldAdderService adderService;
+    private final ExtractionSessionService sessionService;
+    private final PageImageEncoder imageEncoder;
+    private final UploadStorageService uploadStorage;
+    private final AdmissionService admission;
+    private final BatchExtractionService batchExtraction;
+    private final PdfMetrics metrics;
     private final ObjectMapper objectMapper;
 
-    public PdfController(PdfFieldExtractorService extractorService, PdfFieldAdderService adderService, ObjectMapper objectMapper) {
+    public PdfController(PdfFieldExtractorService extractorService, PdfFieldAdderService adderService,
+                         ExtractionSessionService sessionService, PageImageEncoder imageEncoder,
+                         UploadStorageService uploadStorage, AdmissionService admission,
+                         BatchExtractionService batchExtraction, PdfMetrics metrics, ObjectMapper objectMapper) {
         this.extractorService = extractorService;
         this.adderService = adderService;
+        this.sessionService = sessionService;
+        this.imageEncoder = imageEncoder;
+        this.uploadStorage = uploadStorage;
+        this.admission = admission;
+        this.batchExtraction = batchExtraction;
+        this.metrics = metrics;
         this.objectMapper = objectMapper;
     }
 
+    /**
+     * With {@code session=true}, the document is kept server-side and only its fields and page layout
+     * are returned; pages are then fetched one by one from {@link #getSessionPage}. With
+     * {@code includePages=false} nothing is rendered or kept, the answer only lists fields and page layout.
+     * Page resolution is picked with the {@code profile}, {@code dpi} or {@code width} parameters.
+     */
     @PostMapping("/extract")
-    public ResponseEntity<ExtractionResult> extractFields(@RequestParam("file") MultipartFile file) throws IOException {
+    public ResponseEntity<ExtractionResult> extractFields(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "false") boolean session,
+            @RequestParam(defaultValue = "true") boolean includePages,
+            RenderOptions options) throws IOException {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
 
-        ExtractionData data = extractorService.extractAndFlatten(file.getBytes());
-        List<String> pagesBase64 = data.pageImages().stream()
-                .map(bytes -> Base64.getEncoder().encodeToString(bytes))
-                .toList();
-        ExtractionResult result = new ExtractionResult(
-                file.getOriginalFilename(),
-                data.fields().size(),
-                data.fields(),
-                pagesBase64
-        );
-
-        return ResponseEntity.ok(result);
+        return admission.call(Operation.EXTRACT, () -> {
+            Path upload = uploadStorage.store(file).path();
+            try {
+                if (session) {
+                    SessionExtraction created = sessionService.create(upload);
+                    ExtractionData data = created.data();
+                    return ResponseEntity.ok(new ExtractionResult(
+                            file.getOriginalFilename(),
+                            data.fields().size(),
+                            data.fields(),
+                            data.pages(),
+                            null,
+                            created.sessionId()
+                    ));
+                }
+
+                if (!includePages) {
+                    ExtractionData data = extractorService.extractFieldsOnly(upload);
+                    return ResponseEntity.ok(new ExtractionResult(
+                            file.getOriginalFilename(),
+                            data.fields().size(),
+                            data.fields(),
+                            data.pages(),
+                            null,
+                            null
+                    ));
+                }
+
+                ExtractionData data = extractorService.extractAndFlatten(upload, options.orFormat(ImageFormat.PNG));
+                List<String> pagesBase64 = metrics.stage(Stage.BASE64, () -> data.pageImages().stream()
+                        .map(bytes -> Base64.getEncoder().encodeToString(bytes))
+                        .toList());
+                return ResponseEntity.ok(new ExtractionResult(
+                        file.getOriginalFilename(),
+                        data.fields().size(),
+                        data.fields(),
+                        data.pages(),
+                        pagesBase64,
+                        null
+                ));
+            } finally {
+                // Gone already when a session took the file over
+                Files.deleteIfExists(upload);
+            }
+        });
+    }
+
+    @GetMapping("/sessions/{sessionId}/pages/{page}")
+    public ResponseEntity<byte[]> getSessionPage(@PathVariable String sessionId, @PathVariable int page,
+                                                 RenderOptions options,
+                                                 @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
+            throws IOException {
+        RenderOptions resolved = options.orFormat(imageEncoder.negotiate(accept));
+        Optional<byte[]> image = admission.call(Operation.RENDER,
+                () -> sessionService.renderPage(sessionId, page, resolved));
+        // A session never changes, so the browser may keep its pages for the session lifetime
+        return image
+                .map(bytes -> ResponseEntity.ok()
+                        .contentType(resolved.format().mediaType())
+                        .cacheControl(CacheControl.maxAge(sessionService.getTtl()).cachePrivate())
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .body(bytes))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Streaming variant of {@link #extractFields}, selected with {@code Accept: application/x-ndjson}.
+     * Emits one JSON object per line: the field list, then each page as soon as it is rendered,
+     * unless {@code includePages=false}.
+     */
+    @PostMapping(value = "/extract", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> extractFieldsStreaming(@RequestParam("file") MultipartFile file,
+                                                                        @RequestParam(defaultValue = "true") boolean includePages,
+                                                                        RenderOptions options) throws IOException {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // The slot is held until the last page has been streamed
+        Permit permit = admission.acquire(Operation.EXTRACT);
+        // Store the upload now: the multipart request may be cleaned up once the handler returns
+        Path upload;
+        try {
+            upload = uploadStorage.store(file).path();
+        } catch (IOException | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+        String fileName = file.getOriginalFilename();
+        ObjectWriter writer = objectMapper.writerFor(ExtractionEvent.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        StreamingResponseBody body = out -> {
+            try {
+                RenderOptions resolved = options.orFormat(ImageFormat.PNG);
+                // Only the extraction counts towards the slot's latency, not a slow client
+                ExtractionListener listener = ndjsonListener(writer, permit.excludingWrites(out), fileName,
+                        resolved.format());
+                if (includePages) {
+                    extractorService.extractAndStream(upload, resolved, listener);
+                } else {
+                    ExtractionData data = extractorService.extractFieldsOnly(upload);
+                    listener.onFields(data.fields(), data.pages().size());
+                }
+            } finally {
+                permit.close();
+                Files.deleteIfExists(upload);
+            }
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Inventories the fields of many PDFs, sent as {@code files} parts, without rendering them. Documents are
+     * extracted in parallel and reported as one NDJSON line each, in the order they finish.
+     * Not subject to admission control: the batch extractor bounds its own concurrency, and answers 429
+     * once too many batches are running.
+     */
+    @PostMapping(value = "/extract-batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> extractBatch(@RequestParam("files") List<MultipartFile> files)
+            throws IOException {
+        // Stored now: the multipart request may be cleaned up once the handler returns
+        return batchResponse(batchExtraction.store(files));
+    }
+
+    /**
+     * Same as {@link #extractBatch} for a ZIP archive sent as the request body. Its PDF entries are
+     * extracted as the archive streams in.
+     */
+    @PostMapping(value = "/extract-batch", consumes = {"application/zip", "application/x-zip-compressed"},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> extractBatchArchive(HttpServletRequest request) throws IOException {
+        InputStream archive = request.getInputStream();
+        return batchResponse(batchExtraction.zipEntries(archive));
     }
 
     @PostMapping("/add-fields")
-    public ResponseEntity<byte[]> addFields(@RequestParam("file") MultipartFile file,
-                                            @RequestParam("fields") String fieldsJson) throws IOException {
+    public ResponseEntity<StreamingResponseBody> addFields(@RequestParam("file") MultipartFile file,
+                                                           @RequestParam("fields") String fieldsJson) throws IOException {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
 
         List<AddFieldsRequest> fields = objectMapper.readValue(fieldsJson, new TypeReference<>() {});
-        byte[] resultPdf = adderService.addFields(file.getBytes(), fields);
+        Permit permit = admission.acquire(Operation.PREPARE);
+        Path upload;
+        try {
+            upload = uploadStorage.store(file).path();
+        } catch (IOException | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+        // The resulting PDF is written straight to the response
+        StreamingResponseBody body = out -> {
+            try {
+                adderService.addFields(upload, fields, permit.excludingWrites(out));
+            } finally {
+                permit.close();
+                Files.deleteIfExists(upload);
+            }
+        };
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_PDF);
         headers.setContentDispositionFormData("attachment", "generated.pdf");
 
-        return ResponseEntity.ok().headers(headers).body(resultPdf);
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> batchResponse(BatchSource source) {
+        ObjectWriter writer = objectMapper.writerFor(BatchExtractionResult.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        StreamingResponseBody body = out -> batchExtraction.extractAll(source, result -> {
+            writer.writeValue(out, result);
+            out.write('\n');
+            out.flush();
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private static ExtractionListener ndjsonListener(ObjectWriter writer, OutputStream out, String fileName,
+                                                     ImageFormat format) {
+        return new ExtractionListener() {
+            @Override
+            public void onFields(List<PdfField> fields, int pageCount) throws IOException {
+                writeLine(new ExtractionEvent.Fields(fileName, fields.size(), fields, pageCount));
+            }
+
+            @Override
+            public void onPage(int pageIndex, byte[] image) throws IOException {
+                writeLine(new ExtractionEvent.Page(pageIndex, format.mediaType().toString(), image));
+            }
+
+            private void writeLine(ExtractionEvent event) throws IOException {
+                writer.writeValue(out, event);
+                out.write('\n');
+                out.flush();
+            }
+        };
     }
 }
@@ -2,16 +2,48 @@ package com.poc.pdf.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.poc.pdf.entity.WorkflowStatus;
 import com.poc.pdf.model.AddFieldsRequest;
+import com.poc.pdf.model.BatchSignRequest;
+import com.poc.pdf.model.BatchSignResponse;
+import com.poc.pdf.model.BulkJobResponse;
+import com.poc.pdf.model.BulkRecipient;
+import com.poc.pdf.model.ImageFormat;
+import com.poc.pdf.model.RenderOptions;
 import com.poc.pdf.model.SignRequest;
 import com.poc.pdf.model.WorkflowResponse;
+import com.poc.pdf.service.AdmissionService;
+import com.poc.pdf.service.AdmissionService.Operation;
+import com.poc.pdf.service.BatchSigningService;
+import com.poc.pdf.service.BulkWorkflowService;
+import com.poc.pdf.service.ConflictException;
+import com.poc.pdf.service.PageImageEncoder;
+import com.poc.pdf.service.UploadStorageService;
+import com.poc.pdf.service.UploadStorageService.StoredUpload;
+import com.poc.pdf.service.WorkflowCreationPipeline;
+import com.poc.pdf.service.WorkflowEventBus;
 import com.poc.pdf.service.WorkflowService;
+import com.poc.pdf.service.WorkflowService.PdfFile;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.util.List;
 
 @RestController
@@ -19,47 +51,274 @@ import java.util.List;
 @CrossOrigin(origins = "http://localhost:5173")
 public class WorkflowController {
 
+    // Request attributes through which Tomcat sends a file itself once the servlet returns
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final WorkflowService workflowService;
+    private final BulkWorkflowService bulkWorkflowService;
+    private final BatchSigningService batchSigningService;
+    private final WorkflowCreationPipeline creationPipeline;
+    private final AdmissionService admission;
+    private final PageImageEncoder imageEncoder;
+    private final UploadStorageService uploadStorage;
+    private final WorkflowEventBus eventBus;
     private final ObjectMapper objectMapper;
 
-    public WorkflowController(WorkflowService workflowService, ObjectMapper objectMapper) {
+    public WorkflowController(WorkflowService workflowService, BulkWorkflowService bulkWorkflowService,
+                              BatchSigningService batchSigningService, WorkflowCreationPipeline creationPipeline,
+                              AdmissionService admission, PageImageEncoder imageEncoder,
+                              UploadStorageService uploadStorage, WorkflowEventBus eventBus,
+                              ObjectMapper objectMapper) {
         this.workflowService = workflowService;
+        this.bulkWorkflowService = bulkWorkflowService;
+        this.batchSigningService = batchSigningService;
+        this.creationPipeline = creationPipeline;
+        this.admission = admission;
+        this.imageEncoder = imageEncoder;
+        this.uploadStorage = uploadStorage;
+        this.eventBus = eventBus;
         this.objectMapper = objectMapper;
     }
 
+    /**
+     * Creates a workflow. With {@code async=true} only the upload is stored: the response is 202 with the
+     * workflow in PREPARING state, to be polled until it is ready; its pages are pre-rendered with the given options.
+     */
     @PostMapping
     public ResponseEntity<WorkflowResponse> createWorkflow(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("fields") String fieldsJson) throws Exception {
+            @RequestParam("fields") String fieldsJson,
+            @RequestParam(defaultValue = "true") boolean includePages,
+            @RequestParam(defaultValue = "false") boolean async,
+            RenderOptions options) throws Exception {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
         List<AddFieldsRequest> fields = objectMapper.readValue(fieldsJson, new TypeReference<>() {});
-        WorkflowResponse response = workflowService.createWorkflow(
-                file.getBytes(), file.getOriginalFilename(), fields);
-        return ResponseEntity.ok(response);
+        StoredUpload upload = uploadStorage.store(file);
+        try {
+            if (async) {
+                WorkflowResponse response = creationPipeline.submit(
+                        upload, file.getOriginalFilename(), fields, options.orFormat(ImageFormat.PNG));
+                return ResponseEntity.accepted().location(URI.create("/api/workflow/" + response.id())).body(response);
+            }
+            WorkflowResponse response = admission.call(Operation.PREPARE, () -> workflowService.createWorkflow(
+                    upload, file.getOriginalFilename(), fields, includePages, options.orFormat(ImageFormat.PNG)));
+            return ResponseEntity.ok(response);
+        } finally {
+            // Only left behind when the workflow could not be registered; register moves the upload otherwise
+            Files.deleteIfExists(upload.path());
+        }
+    }
+
+    /**
+     * Creates one workflow per recipient from a single document and field layout, in the background.
+     * {@code recipients} is a JSON list of {@code {"fieldValues": {...}}} prefills; poll {@link #getBulkJob} for progress.
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<BulkJobResponse> createWorkflows(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("fields") String fieldsJson,
+            @RequestParam("recipients") String recipientsJson) throws Exception {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<AddFieldsRequest> fields = objectMapper.readValue(fieldsJson, new TypeReference<>() {});
+        List<BulkRecipient> recipients = objectMapper.readValue(recipientsJson, new TypeReference<>() {});
+        StoredUpload upload = uploadStorage.store(file);
+        try {
+            BulkJobResponse job = bulkWorkflowService.start(upload, file.getOriginalFilename(), fields, recipients);
+            return ResponseEntity.accepted().body(job);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(upload.path());
+            throw e;
+        }
     }
 
+    @GetMapping("/bulk/{jobId}")
+    public ResponseEntity<BulkJobResponse> getBulkJob(@PathVariable String jobId) {
+        return ResponseEntity.of(bulkWorkflowService.getJob(jobId));
+    }
+
+    /**
+     * Answers {@code If-None-Match} with 304 while the workflow is unchanged, before loading or rendering anything.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<WorkflowResponse> getWorkflow(@PathVariable Long id) throws Exception {
-        WorkflowResponse response = workflowService.getWorkflow(id);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<WorkflowResponse> getWorkflow(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "true") boolean includePages,
+            RenderOptions options,
+            WebRequest webRequest) throws Exception {
+        // Tagged before reading: a change meanwhile makes the next request fetch again rather than be missed
+        String revision = workflowService.getRevisionTag(id);
+        if (webRequest.checkNotModified(revision)) {
+            return null;
+        }
+        if (!includePages) {
+            return revalidated(revision)
+                    .body(workflowService.getWorkflow(id, false, options.orFormat(ImageFormat.PNG)));
+        }
+        WorkflowResponse response = admission.call(Operation.RENDER,
+                () -> workflowService.getWorkflow(id, true, options.orFormat(ImageFormat.PNG)));
+        return revalidated(revision).body(response);
+    }
+
+    /**
+     * Renders a single page (zero-based index), so clients can load pages on demand.
+     * The resolution is picked with {@code profile}, {@code dpi} or {@code width}; the encoding
+     * follows {@code format}, or else the {@code Accept} header. An unchanged page is answered with 304.
+     * Answers 409 while the workflow is PREPARING, like {@link #downloadPdf}.
+     */
+    @GetMapping("/{id}/pages/{page}")
+    public ResponseEntity<byte[]> getPage(@PathVariable Long id, @PathVariable int page, RenderOptions options,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                          WebRequest webRequest) throws Exception {
+        RenderOptions resolved = options.orFormat(imageEncoder.negotiate(accept));
+        // Each negotiated encoding is its own representation
+        String revision = workflowService.getRevisionTag(id) + "-" + resolved.format().name().toLowerCase();
+        if (webRequest.checkNotModified(revision)) {
+            return null;
+        }
+        // Already rendered pages are served without waiting for a render slot
+        byte[] image = workflowService.getCachedPage(id, page, resolved);
+        if (image == null) {
+            image = admission.call(Operation.RENDER, () -> workflowService.renderPage(id, page, resolved));
+        }
+        return revalidated(revision)
+                .contentType(resolved.format().mediaType())
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(image);
+    }
+
+    /**
+     * Streams the status and field value changes of a workflow as server-sent {@code workflow} events,
+     * starting with its current state, so clients can wait for a signature without polling.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter workflowEvents(@PathVariable Long id) {
+        // Checked here, as an unknown workflow can no longer be reported once the stream is open
+        workflowService.checkExists(id);
+        return eventBus.subscribe(id, () -> workflowService.getEvent(id));
     }
 
     @PostMapping("/{id}/sign")
     public ResponseEntity<WorkflowResponse> signWorkflow(
             @PathVariable Long id,
-            @RequestBody SignRequest request) throws Exception {
-        WorkflowResponse response = workflowService.signWorkflow(id, request);
+            @RequestBody SignRequest request,
+            @RequestParam(defaultValue = "true") boolean includePages,
+            RenderOptions options) throws Exception {
+        WorkflowResponse response = admission.call(Operation.SIGN,
+                () -> workflowService.signWorkflow(id, request, includePages, options.orFormat(ImageFormat.PNG)));
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Signs several workflows for one signer. Nothing is rendered; each workflow reports its new status or why it failed.
+     * Each signature takes a SIGN slot like a single request, but waits for one instead of being shed.
+     */
+    @PostMapping("/sign-batch")
+    public ResponseEntity<BatchSignResponse> signWorkflows(@RequestBody BatchSignRequest request) throws Exception {
+        return ResponseEntity.ok(batchSigningService.signAll(request));
+    }
+
+    /**
+     * Sends the current PDF from disk, through sendfile when the container supports it. A single
+     * {@code Range} is honoured with a 206 (subject to {@code If-Range}); several ranges get the whole file.
+     * {@code If-None-Match} and {@code If-Modified-Since} are answered with 304 while the workflow is unchanged.
+     * Answers 409 while the workflow is PREPARING, as its PDF is about to be replaced.
+     */
     @GetMapping("/{id}/download")
-    public ResponseEntity<byte[]> downloadPdf(@PathVariable Long id) throws Exception {
-        byte[] pdf = workflowService.downloadPdf(id);
+    public void downloadPdf(@PathVariable Long id, WebRequest webRequest,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PdfFile pdf = workflowService.getPdfFile(id);
+        String eTag = "\"" + pdf.revisionTag() + "\"";
+        if (pdf.status() == WorkflowStatus.PREPARING) {
+            throw new ConflictException("The workflow is still being prepared");
+        }
+        if (webRequest.checkNotModified(eTag, pdf.lastModified())) {
+            return;
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_PDF);
         headers.setContentDispositionFormData("attachment", "signed.pdf");
-        return ResponseEntity.ok().headers(headers).body(pdf);
+        response.setContentType(MediaType.APPLICATION_PDF_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, headers.getFirst(HttpHeaders.CONTENT_DISPOSITION));
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = pdf.size();
+        HttpRange range = requestedRange(request, eTag, pdf.lastModified());
+        if (range != null) {
+            start = range.getRangeStart(pdf.size());
+            end = range.getRangeEnd(pdf.size()) + 1;
+            if (start >= end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + pdf.size());
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + pdf.size());
+        }
+        response.setContentLengthLong(end - start);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        // Past PREPARING, a signature landing meanwhile only appends to the file, so these bytes are still the ones announced
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, pdf.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(pdf.path())) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            for (long position = start; position < end; ) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+
+    /**
+     * A 200 tagged with the workflow revision, which clients and proxies may store but must revalidate.
+     */
+    private static ResponseEntity.BodyBuilder revalidated(String revision) {
+        return ResponseEntity.ok().eTag(revision).cacheControl(CacheControl.noCache());
+    }
+
+    /**
+     * The single range to send, or null to send the whole file: when there is no usable {@code Range}, when
+     * {@code If-Range} names another revision, or when several ranges are asked for (which RFC 9110 lets us ignore).
+     */
+    private static HttpRange requestedRange(HttpServletRequest request, String eTag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !(ifRange.startsWith("\"") ? ifRange.equals(eTag) : isDate(request, lastModified))) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            // A malformed Range is ignored
+            return null;
+        }
+    }
+
+    /**
+     * Whether {@code If-Range} holds the given modification time, to the second; a malformed date never matches.
+     */
+    private static boolean isDate(HttpServletRequest request, long lastModified) {
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 }
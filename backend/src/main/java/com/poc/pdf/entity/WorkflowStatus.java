@@ -2,9 +2,11 @@ package com.poc.pdf.entity;
 
 public enum WorkflowStatus {
     CREATED,
+    PREPARING,
     SIGNER_A_PENDING,
     SIGNER_A_SIGNED,
     SIGNER_B_PENDING,
     SIGNER_B_SIGNED,
-    COMPLETED
+    COMPLETED,
+    FAILED
 }
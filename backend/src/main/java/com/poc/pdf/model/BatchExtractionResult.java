@@ -0,0 +1,11 @@
+package com.poc.pdf.model;
+
+import java.util.List;
+
+/**
+ * Outcome for one document of a batch extraction: its fields once EXTRACTED, or FAILED with the reason.
+ * {@code index} is the position of the document in the request.
+ */
+public record BatchExtractionResult(int index, String fileName, String status, Integer totalFields,
+                                    List<PdfField> fields, Integer pageCount, String error) {
+}
@@ -0,0 +1,6 @@
+package com.poc.pdf.model;
+
+import java.util.Map;
+
+public record BatchSignItem(Long workflowId, Map<String, String> fieldValues) {
+}
@@ -0,0 +1,6 @@
+package com.poc.pdf.model;
+
+import java.util.List;
+
+public record BatchSignRequest(String signerRole, List<BatchSignItem> items) {
+}
@@ -0,0 +1,11 @@
+package com.poc.pdf.model;
+
+import java.util.List;
+
+public record BatchSignResponse(
+    int total,
+    int signed,
+    int failed,
+    List<BatchSignResult> results
+) {
+}
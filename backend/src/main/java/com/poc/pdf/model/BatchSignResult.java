@@ -0,0 +1,7 @@
+package com.poc.pdf.model;
+
+/**
+ * Outcome for one workflow of a batch: its new status once signed, or FAILED with the reason.
+ */
+public record BatchSignResult(Long workflowId, String status, String error) {
+}
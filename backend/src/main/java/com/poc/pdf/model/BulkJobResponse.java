@@ -0,0 +1,13 @@
+package com.poc.pdf.model;
+
+import java.util.List;
+
+public record BulkJobResponse(
+    String jobId,
+    String status,
+    int total,
+    int created,
+    List<Long> workflowIds,
+    String error
+) {
+}
@@ -0,0 +1,9 @@
+package com.poc.pdf.model;
+
+import java.util.Map;
+
+/**
+ * One workflow of a bulk creation: the values its fields are prefilled with, by field name.
+ */
+public record BulkRecipient(Map<String, String> fieldValues) {
+}
@@ -0,0 +1,11 @@
+package com.poc.pdf.model;
+
+/**
+ * How much colour a rendered page keeps. AUTO renders in colour and reduces pages that turn out to have none;
+ * GRAY and BINARY render straight into an 8-bit or 1-bit image, without going through colour at all.
+ */
+public enum ColorMode {
+    AUTO,
+    GRAY,
+    BINARY
+}
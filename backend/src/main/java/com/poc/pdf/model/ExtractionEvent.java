@@ -0,0 +1,24 @@
+package com.poc.pdf.model;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.util.List;
+
+/**
+ * One line of a streamed extraction: the field list first, then each page as it is rendered.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+    @JsonSubTypes.Type(value = ExtractionEvent.Fields.class, name = "fields"),
+    @JsonSubTypes.Type(value = ExtractionEvent.Page.class, name = "page")
+})
+public sealed interface ExtractionEvent {
+
+    record Fields(String fileName, int totalFields, List<PdfField> fields, int pageCount) implements ExtractionEvent {
+    }
+
+    // byte[] is written by Jackson as a Base64 string, straight from the encoded image; mediaType says which format
+    record Page(int index, String mediaType, byte[] pageBase64) implements ExtractionEvent {
+    }
+}
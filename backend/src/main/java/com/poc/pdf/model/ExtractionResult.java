@@ -2,5 +2,5 @@ package com.poc.pdf.model;
 
 import java.util.List;
 
-public record ExtractionResult(String fileName, int totalFields, List<PdfField> fields, List<String> pagesBase64) {
+public record ExtractionResult(String fileName, int totalFields, List<PdfField> fields, List<PageInfo> pages, List<String> pagesBase64, String sessionId) {
 }
@@ -0,0 +1,32 @@
+package com.poc.pdf.model;
+
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Encodings available for rendered pages, in order of preference when a client accepts any image.
+ */
+public enum ImageFormat {
+    PNG("png", MediaType.IMAGE_PNG),
+    JPEG("jpeg", MediaType.IMAGE_JPEG),
+    WEBP("webp", MediaType.parseMediaType("image/webp"));
+
+    private final String formatName;
+    private final MediaType mediaType;
+
+    ImageFormat(String formatName, MediaType mediaType) {
+        this.formatName = formatName;
+        this.mediaType = mediaType;
+    }
+
+    /** ImageIO format name. */
+    public String formatName() { return formatName; }
+
+    public MediaType mediaType() { return mediaType; }
+
+    /** Whether an ImageIO writer is installed for this format; WebP needs a plugin. */
+    public boolean isWritable() {
+        return ImageIO.getImageWritersByFormatName(formatName).hasNext();
+    }
+}
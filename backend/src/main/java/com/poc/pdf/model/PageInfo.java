@@ -0,0 +1,4 @@
+package com.poc.pdf.model;
+
+public record PageInfo(int index, float width, float height) {
+}
@@ -0,0 +1,41 @@
+package com.poc.pdf.model;
+
+/**
+ * How pages should be rendered, bound from the {@code profile}, {@code dpi}, {@code width}, {@code format} and
+ * {@code color} query parameters. An explicit target width (in pixels) wins over an explicit DPI, which wins over
+ * the profile default; an explicit colour mode wins over the profile's. Without an explicit format this server
+ * can write, the endpoint decides on one through {@link #orFormat}.
+ */
+public record RenderOptions(RenderProfile profile, Float dpi, Integer width, ImageFormat format, ColorMode color) {
+
+    public static final RenderOptions DEFAULT = new RenderOptions(RenderProfile.SCREEN, null, null, ImageFormat.PNG, null);
+
+    private static final float MIN_DPI = 18;
+    private static final float MAX_DPI = 600;
+
+    public RenderOptions {
+        if (profile == null) profile = RenderProfile.SCREEN;
+    }
+
+    public RenderOptions orFormat(ImageFormat fallback) {
+        return format != null && format.isWritable() ? this : new RenderOptions(profile, dpi, width, fallback, color);
+    }
+
+    public ColorMode colorMode() {
+        return color != null ? color : profile.colorMode();
+    }
+
+    /**
+     * Resolves the DPI for a page of the given width in PDF points, kept within sane bounds.
+     */
+    public float dpiFor(float pageWidth) {
+        float resolved = profile.dpi();
+        if (width != null && pageWidth > 0) {
+            // Aim half a pixel over, the renderer truncates the scaled width
+            resolved = (width + 0.5f) * 72f / pageWidth;
+        } else if (dpi != null) {
+            resolved = dpi;
+        }
+        return Math.max(MIN_DPI, Math.min(MAX_DPI, resolved));
+    }
+}
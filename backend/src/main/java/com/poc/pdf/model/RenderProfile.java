@@ -0,0 +1,27 @@
+package com.poc.pdf.model;
+
+/**
+ * Rendering tiers for page images. Thumbnails trade quality for speed and are rendered straight
+ * to grayscale, the other tiers render with full image resolution, antialiasing and colour.
+ */
+public enum RenderProfile {
+    THUMBNAIL(36, true, ColorMode.GRAY),
+    SCREEN(150, false, ColorMode.AUTO),
+    ZOOM(300, false, ColorMode.AUTO);
+
+    private final float dpi;
+    private final boolean fast;
+    private final ColorMode colorMode;
+
+    RenderProfile(float dpi, boolean fast, ColorMode colorMode) {
+        this.dpi = dpi;
+        this.fast = fast;
+        this.colorMode = colorMode;
+    }
+
+    public float dpi() { return dpi; }
+
+    public boolean fast() { return fast; }
+
+    public ColorMode colorMode() { return colorMode; }
+}
@@ -0,0 +1,18 @@
+package com.poc.pdf.model;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * A change of a workflow pushed to its subscribers. {@code fieldValues} maps field names to their values
+ * when they may have changed, and is null otherwise. {@code version} grows with every saved change, so a
+ * subscriber can tell which of two states is the later one.
+ */
+public record WorkflowEvent(
+    Long workflowId,
+    String status,
+    Map<String, String> fieldValues,
+    LocalDateTime updatedAt,
+    Long version
+) {
+}
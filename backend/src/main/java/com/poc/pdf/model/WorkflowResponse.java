@@ -8,6 +8,8 @@ public record WorkflowResponse(
     String fileName,
     String status,
     List<WorkflowFieldResponse> fields,
+    int pageCount,
+    List<PageInfo> pages,
     List<String> pagesBase64,
     LocalDateTime createdAt,
     LocalDateTime updatedAt
@@ -1,7 +1,14 @@
 package com.poc.pdf.repository;
 
 import com.poc.pdf.entity.SignatureWorkflow;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Optional;
+
 public interface SignatureWorkflowRepository extends JpaRepository<SignatureWorkflow, Long> {
+
+    // Fields fetched eagerly, for callers working outside the request's persistence context
+    @EntityGraph(attributePaths = "fields")
+    Optional<SignatureWorkflow> findWithFieldsById(Long id);
 }
@@ -0,0 +1,258 @@
+package com.poc.pdf.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many heavy operations of each class run at once. A request that finds its class at the
+ * limit waits in a short bounded queue and is shed with an {@link OverloadedException} once the queue is
+ * full or its deadline passes. Each limit adapts between 1 and its maximum: it shrinks when requests keep
+ * queueing while recent latency stays well above the long-term average, and grows back slowly while the
+ * class runs at its limit. A single slow operation, such as a large document, is not enough to shrink it.
+ * Operations outside these classes, such as status reads and downloads, are never held back.
+ */
+@Service
+public class AdmissionService {
+
+    public enum Operation { RENDER, PREPARE, SIGN, EXTRACT }
+
+    /**
+     * Held for the duration of an admitted operation. Its latency, which drives the limit, runs from
+     * admission to close, less any time {@linkplain #exclude excluded}.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+
+        /**
+         * Leaves time spent waiting on something other than the operation out of its latency.
+         */
+        void exclude(long nanos);
+
+        /**
+         * Wraps a response stream so that time blocked writing to the client is not counted as latency,
+         * for operations that stream their result while holding the permit.
+         */
+        default OutputStream excludingWrites(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    long start = System.nanoTime();
+                    try {
+                        out.write(b);
+                    } finally {
+                        exclude(System.nanoTime() - start);
+                    }
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    long start = System.nanoTime();
+                    try {
+                        out.write(b, off, len);
+                    } finally {
+                        exclude(System.nanoTime() - start);
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    long start = System.nanoTime();
+                    try {
+                        out.flush();
+                    } finally {
+                        exclude(System.nanoTime() - start);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Work run under a permit by {@link #call}.
+     */
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final Map<Operation, Limiter> limiters = new EnumMap<>(Operation.class);
+    private final int queueSize;
+    private final Duration queueTimeout;
+    private final double latencyTolerance;
+
+    public AdmissionService(
+            @Value("${app.pdf.admission.render.max-concurrency}") int maxRender,
+            @Value("${app.pdf.admission.prepare.max-concurrency}") int maxPrepare,
+            @Value("${app.pdf.admission.sign.max-concurrency}") int maxSign,
+            @Value("${app.pdf.admission.extract.max-concurrency}") int maxExtract,
+            @Value("${app.pdf.admission.queue-size}") int queueSize,
+            @Value("${app.pdf.admission.queue-timeout}") Duration queueTimeout,
+            @Value("${app.pdf.admission.latency-tolerance}") double latencyTolerance,
+            MeterRegistry meterRegistry) {
+        this.queueSize = queueSize;
+        this.queueTimeout = queueTimeout;
+        this.latencyTolerance = latencyTolerance;
+        limiters.put(Operation.RENDER, new Limiter(Operation.RENDER, maxRender, meterRegistry));
+        limiters.put(Operation.PREPARE, new Limiter(Operation.PREPARE, maxPrepare, meterRegistry));
+        limiters.put(Operation.SIGN, new Limiter(Operation.SIGN, maxSign, meterRegistry));
+        limiters.put(Operation.EXTRACT, new Limiter(Operation.EXTRACT, maxExtract, meterRegistry));
+    }
+
+    /**
+     * Waits for a slot of the given class; the returned permit must be closed when the work is done.
+     *
+     * @throws OverloadedException if no slot frees up in time
+     */
+    public Permit acquire(Operation operation) {
+        return limiters.get(operation).acquire();
+    }
+
+    /**
+     * Runs {@code work} once a slot of the given class is free, and releases the slot when it returns.
+     *
+     * @throws OverloadedException if no slot frees up in time
+     */
+    public <T, E extends Exception> T call(Operation operation, Work<T, E> work) throws E {
+        Permit permit = acquire(operation);
+        try {
+            return work.run();
+        } finally {
+            permit.close();
+        }
+    }
+
+    private final class Limiter {
+        private final Operation operation;
+        private final int maxLimit;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        private final Counter rejected;
+        private volatile double limit;
+        private volatile int inFlight;
+        private volatile int waiting;
+        // Moving averages of the latency in nanoseconds, over the last few and the last hundred or so operations
+        private double recentLatency;
+        private double longTermLatency;
+        // Completions in a row that found requests queued while recent latency was high
+        private int congested;
+
+        private Limiter(Operation operation, int maxLimit, MeterRegistry meterRegistry) {
+            this.operation = operation;
+            this.maxLimit = Math.max(1, maxLimit);
+            this.limit = this.maxLimit;
+
+            String tag = operation.name().toLowerCase();
+            Gauge.builder("pdf.admission.limit", () -> (int) limit)
+                    .tag("operation", tag)
+                    .description("Current concurrency limit")
+                    .register(meterRegistry);
+            Gauge.builder("pdf.admission.in-flight", () -> inFlight)
+                    .tag("operation", tag)
+                    .description("Admitted operations still running")
+                    .register(meterRegistry);
+            Gauge.builder("pdf.admission.waiting", () -> waiting)
+                    .tag("operation", tag)
+                    .description("Requests queued for a slot")
+                    .register(meterRegistry);
+            this.rejected = Counter.builder("pdf.admission.rejected")
+                    .tag("operation", tag)
+                    .description("Requests shed because the operation class was saturated")
+                    .register(meterRegistry);
+        }
+
+        private Permit acquire() {
+            long deadline = System.nanoTime() + queueTimeout.toNanos();
+            lock.lock();
+            try {
+                if (inFlight >= (int) limit) {
+                    if (waiting >= queueSize) throw reject();
+                    waiting++;
+                    try {
+                        while (inFlight >= (int) limit) {
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0) throw reject();
+                            released.awaitNanos(remaining);
+                        }
+                    } finally {
+                        waiting--;
+                    }
+                }
+                inFlight++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for admission");
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            AtomicLong excluded = new AtomicLong();
+            AtomicBoolean closed = new AtomicBoolean();
+            return new Permit() {
+                @Override
+                public void close() {
+                    if (closed.compareAndSet(false, true)) release(System.nanoTime() - start - excluded.get());
+                }
+
+                @Override
+                public void exclude(long nanos) {
+                    excluded.addAndGet(nanos);
+                }
+            };
+        }
+
+        private void release(long latency) {
+            lock.lock();
+            try {
+                boolean wasAtLimit = inFlight >= (int) limit;
+                inFlight--;
+                if (longTermLatency == 0) {
+                    recentLatency = longTermLatency = latency;
+                } else {
+                    recentLatency += (latency - recentLatency) * 0.2;
+                    longTermLatency += (latency - longTermLatency) * 0.01;
+                }
+
+                // Slow completions alone may just be large documents; slow completions with requests queued are congestion
+                boolean slow = recentLatency > longTermLatency * latencyTolerance;
+                congested = slow && waiting > 0 ? congested + 1 : 0;
+                if (congested >= (int) limit) {
+                    // Work has kept queuing up for a limit's worth of completions: back off
+                    limit = Math.max(1, limit * 0.9);
+                    congested = 0;
+                } else if (!slow && wasAtLimit) {
+                    // Saturated but still fast: probe about one more slot per limit's worth of completions
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private OverloadedException reject() {
+            rejected.increment();
+            // Roughly the time for the requests ahead to drain, at least a second
+            long drainNanos = (long) (longTermLatency * (waiting + 1) / Math.max(1, (int) limit));
+            Duration retryAfter = Duration.ofSeconds(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(drainNanos) + 1));
+            return new OverloadedException(
+                    "Too many " + operation.name().toLowerCase() + " requests, try again later", retryAfter);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.poc.pdf.service;
+
+/**
+ * Thrown when a request is well-formed but its content cannot be accepted, such as an empty or oversized batch.
+ */
+public class BadRequestException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,272 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.model.BatchExtractionResult;
+import com.poc.pdf.service.PdfFieldExtractorService.ExtractionData;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Inventories the fields of many documents, without rendering anything. Documents are extracted on a
+ * pool shared by all batches, while each batch keeps at most {@code max-pending} of its documents
+ * stored and unreported, so reading a large archive waits for extraction to catch up. Results are
+ * handed over as documents finish; a document that cannot be read fails on its own.
+ * At most {@code max-concurrent} batches run at once, further ones are shed with an {@link OverloadedException};
+ * they stay out of the EXTRACT admission class, whose adaptive limit would otherwise learn from their long durations.
+ */
+@Service
+public class BatchExtractionService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchExtractionService.class);
+
+    private static final String EXTRACTED = "EXTRACTED";
+    private static final String FAILED = "FAILED";
+
+    /**
+     * A document stored for extraction, or one that could not be stored, with the reason.
+     */
+    public record BatchDocument(String fileName, Path path, String error) {}
+
+    /**
+     * Supplies the documents of a batch one at a time. Closing it deletes the documents it stored but did not hand out.
+     */
+    public interface BatchSource extends Closeable {
+        /**
+         * Returns the next document, or null once there are no more.
+         */
+        BatchDocument next() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface ResultListener {
+        void onResult(BatchExtractionResult result) throws IOException;
+    }
+
+    private final PdfFieldExtractorService extractorService;
+    private final UploadStorageService uploadStorage;
+    private final int maxPending;
+    private final int maxDocuments;
+    private final long maxEntrySize;
+    private final Semaphore batches;
+    private final ExecutorService executor;
+
+    public BatchExtractionService(
+            PdfFieldExtractorService extractorService,
+            UploadStorageService uploadStorage,
+            @Value("${app.pdf.extract-batch.parallelism}") int parallelism,
+            @Value("${app.pdf.extract-batch.max-pending}") int maxPending,
+            @Value("${app.pdf.extract-batch.max-documents}") int maxDocuments,
+            @Value("${app.pdf.extract-batch.max-entry-size}") DataSize maxEntrySize,
+            @Value("${app.pdf.extract-batch.max-concurrent}") int maxConcurrent) {
+        this.extractorService = extractorService;
+        this.uploadStorage = uploadStorage;
+        this.maxPending = Math.max(1, maxPending);
+        this.maxDocuments = maxDocuments;
+        this.maxEntrySize = maxEntrySize.toBytes();
+        this.batches = new Semaphore(Math.max(1, maxConcurrent));
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                new CustomizableThreadFactory("pdf-extract-batch-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Stores uploaded files for a batch, so that they outlive the request that carried them.
+     * The batch holds its slot until the returned source is closed.
+     *
+     * @throws BadRequestException if no file was sent
+     * @throws PayloadTooLargeException if more than {@code max-documents} files were sent
+     * @throws OverloadedException if {@code max-concurrent} batches are already running
+     */
+    public BatchSource store(List<MultipartFile> files) throws IOException {
+        if (files.isEmpty()) {
+            throw new BadRequestException("No documents given");
+        }
+        if (files.size() > maxDocuments) {
+            throw new PayloadTooLargeException("Too many documents: " + files.size() + " (max " + maxDocuments + ")");
+        }
+        Runnable release = admit();
+        List<BatchDocument> documents = new ArrayList<>(files.size());
+        BatchSource source = listSource(documents, release);
+        try {
+            for (MultipartFile file : files) {
+                documents.add(new BatchDocument(file.getOriginalFilename(), uploadStorage.store(file).path(), null));
+            }
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+        return source;
+    }
+
+    /**
+     * Reads the PDF entries of a ZIP archive as it streams in. Other entries are skipped; an entry larger
+     * than {@code max-entry-size} fails on its own. The batch holds its slot until the returned source is closed.
+     *
+     * @throws OverloadedException if {@code max-concurrent} batches are already running
+     */
+    public BatchSource zipEntries(InputStream in) {
+        Runnable release = admit();
+        ZipInputStream zip = new ZipInputStream(in);
+        return new BatchSource() {
+            @Override
+            public BatchDocument next() throws IOException {
+                for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    if (entry.isDirectory() || !entry.getName().toLowerCase(Locale.ROOT).endsWith(".pdf")) continue;
+                    try {
+                        return new BatchDocument(entry.getName(), uploadStorage.store(zip, maxEntrySize).path(), null);
+                    } catch (IllegalArgumentException e) {
+                        return new BatchDocument(entry.getName(), null, e.getMessage());
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() {
+                // Entries are only stored when handed out; the request stream belongs to the container
+                release.run();
+            }
+        };
+    }
+
+    /**
+     * Extracts every document of {@code source}, handing each result to {@code listener} as soon as it is
+     * known. Results come in completion order. Once {@code max-documents} have been read, the rest of the
+     * source is skipped.
+     */
+    public void extractAll(BatchSource source, ResultListener listener) throws IOException {
+        BlockingQueue<BatchExtractionResult> finished = new LinkedBlockingQueue<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        int pending = 0;
+        try (source) {
+            int index = 0;
+            for (BatchDocument document = source.next(); document != null; document = source.next()) {
+                if (index == maxDocuments) {
+                    delete(document.path());
+                    listener.onResult(failed(index, document.fileName(),
+                            "Batch limit of " + maxDocuments + " documents reached, the rest was skipped"));
+                    break;
+                }
+                while (pending >= maxPending) {
+                    listener.onResult(finished.take());
+                    pending--;
+                }
+
+                int position = index++;
+                if (document.error() != null) {
+                    listener.onResult(failed(position, document.fileName(), document.error()));
+                    continue;
+                }
+                BatchDocument stored = document;
+                executor.execute(() -> finished.add(extract(position, stored, abandoned)));
+                pending++;
+
+                // Report whatever finished in the meantime before reading on
+                for (BatchExtractionResult result = finished.poll(); result != null; result = finished.poll()) {
+                    listener.onResult(result);
+                    pending--;
+                }
+            }
+            while (pending > 0) {
+                listener.onResult(finished.take());
+                pending--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting a batch");
+        } finally {
+            // Nobody is listening any more when this batch ends early: queued documents are only deleted
+            abandoned.set(true);
+        }
+    }
+
+    private BatchExtractionResult extract(int index, BatchDocument document, AtomicBoolean abandoned) {
+        try {
+            if (abandoned.get()) return failed(index, document.fileName(), "Batch abandoned");
+            ExtractionData data = extractorService.extractFieldsOnly(document.path());
+            return new BatchExtractionResult(index, document.fileName(), EXTRACTED,
+                    data.fields().size(), data.fields(), data.pages().size(), null);
+        } catch (Exception e) {
+            String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return failed(index, document.fileName(), reason);
+        } finally {
+            delete(document.path());
+        }
+    }
+
+    private static BatchExtractionResult failed(int index, String fileName, String error) {
+        return new BatchExtractionResult(index, fileName, FAILED, null, null, null, error);
+    }
+
+    /**
+     * Takes a batch slot, returning what gives it back; running it more than once is harmless.
+     */
+    private Runnable admit() {
+        if (!batches.tryAcquire()) {
+            throw new OverloadedException("Too many batch extractions in progress, try again later", Duration.ofSeconds(5));
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) batches.release();
+        };
+    }
+
+    private static BatchSource listSource(List<BatchDocument> documents, Runnable release) {
+        return new BatchSource() {
+            private int next;
+
+            @Override
+            public BatchDocument next() {
+                return next < documents.size() ? documents.get(next++) : null;
+            }
+
+            @Override
+            public void close() {
+                Iterator<BatchDocument> unread = documents.listIterator(next);
+                while (unread.hasNext()) {
+                    delete(unread.next().path());
+                }
+                next = documents.size();
+                release.run();
+            }
+        };
+    }
+
+    private static void delete(Path path) {
+        if (path == null) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}", path, e);
+        }
+    }
+}
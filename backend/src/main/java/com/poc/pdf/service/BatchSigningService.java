@@ -0,0 +1,137 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.entity.SignatureWorkflow;
+import com.poc.pdf.entity.SignerRole;
+import com.poc.pdf.model.BatchSignItem;
+import com.poc.pdf.model.BatchSignRequest;
+import com.poc.pdf.model.BatchSignResponse;
+import com.poc.pdf.model.BatchSignResult;
+import com.poc.pdf.model.SignRequest;
+import com.poc.pdf.service.AdmissionService.Operation;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Signs many workflows for one signer in a single call. Every workflow gets its own virtual
+ * thread, while a permit pool shared by all batches bounds how many of them are in progress
+ * at once. Each signature then takes a SIGN slot from the admission service, like a single
+ * signature request, so batches and single requests share one limit. Failures are reported
+ * per workflow and do not stop the rest of the batch.
+ */
+@Service
+public class BatchSigningService {
+
+    private static final String FAILED = "FAILED";
+
+    private final WorkflowService workflowService;
+    private final AdmissionService admission;
+    private final int maxItems;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+
+    public BatchSigningService(
+            WorkflowService workflowService,
+            AdmissionService admission,
+            @Value("${app.pdf.sign-batch.permits}") int permits,
+            @Value("${app.pdf.sign-batch.max-items}") int maxItems) {
+        this.workflowService = workflowService;
+        this.admission = admission;
+        this.maxItems = maxItems;
+        this.permits = new Semaphore(permits > 0 ? permits : Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("pdf-sign-", 0).factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public BatchSignResponse signAll(BatchSignRequest request) throws InterruptedException {
+        if (request.signerRole() == null || Arrays.stream(SignerRole.values())
+                .noneMatch(role -> role.name().equals(request.signerRole()))) {
+            throw new BadRequestException("Unknown signer role: " + request.signerRole());
+        }
+        List<BatchSignItem> items = request.items() != null ? request.items() : List.of();
+        if (items.isEmpty()) {
+            throw new BadRequestException("No workflows given");
+        }
+        if (items.size() > maxItems) {
+            throw new BadRequestException("Too many workflows: " + items.size() + " (max " + maxItems + ")");
+        }
+        if (items.stream().anyMatch(item -> item.workflowId() == null)) {
+            throw new BadRequestException("Missing workflow id");
+        }
+
+        List<Future<BatchSignResult>> pending = new ArrayList<>(items.size());
+        for (BatchSignItem item : items) {
+            pending.add(executor.submit(() -> sign(request.signerRole(), item)));
+        }
+
+        List<BatchSignResult> results = new ArrayList<>(items.size());
+        try {
+            for (Future<BatchSignResult> future : pending) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            pending.forEach(future -> future.cancel(true));
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch signing failed", e.getCause());
+        }
+
+        int failed = (int) results.stream().filter(r -> FAILED.equals(r.status())).count();
+        return new BatchSignResponse(results.size(), results.size() - failed, failed, results);
+    }
+
+    private BatchSignResult sign(String signerRole, BatchSignItem item) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new BatchSignResult(item.workflowId(), FAILED, "Interrupted");
+        }
+        try {
+            SignRequest request = new SignRequest(signerRole, item.fieldValues());
+            SignatureWorkflow workflow = admitted(() -> workflowService.sign(item.workflowId(), request));
+            return new BatchSignResult(workflow.getId(), workflow.getStatus().name(), null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new BatchSignResult(item.workflowId(), FAILED, "Interrupted");
+        } catch (Exception e) {
+            return new BatchSignResult(item.workflowId(), FAILED, e.getMessage());
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Runs a signature under a SIGN slot. Unlike a single request, a batch item is not shed while the class is
+     * saturated: it waits for the suggested delay and asks again.
+     */
+    private <T> T admitted(AdmissionService.Work<T, Exception> work) throws Exception {
+        while (true) {
+            AdmissionService.Permit permit;
+            try {
+                permit = admission.acquire(Operation.SIGN);
+            } catch (OverloadedException e) {
+                Thread.sleep(e.getRetryAfter());
+                continue;
+            }
+            try {
+                return work.run();
+            } finally {
+                permit.close();
+            }
+        }
+    }
+}
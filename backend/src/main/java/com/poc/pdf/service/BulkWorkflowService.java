@@ -0,0 +1,256 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.entity.SignatureWorkflow;
+import com.poc.pdf.entity.WorkflowField;
+import com.poc.pdf.entity.WorkflowStatus;
+import com.poc.pdf.model.AddFieldsRequest;
+import com.poc.pdf.model.BulkJobResponse;
+import com.poc.pdf.model.BulkRecipient;
+import com.poc.pdf.repository.SignatureWorkflowRepository;
+import com.poc.pdf.service.UploadStorageService.StoredUpload;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates many workflows from one document and field layout. The document is prepared once
+ * (or taken from the template cache), then each batch of recipients gets its rows inserted in
+ * one transaction and its files written in parallel: a hard link to the prepared file, or a filled-in
+ * copy for recipients with prefilled values. Jobs run in the background, one at a time behind a
+ * bounded queue, and can be polled for progress until they expire.
+ */
+@Service
+public class BulkWorkflowService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkWorkflowService.class);
+
+    public enum JobStatus { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private static final class Job {
+        private final String id = UUID.randomUUID().toString();
+        private final int total;
+        private final List<Long> workflowIds = new CopyOnWriteArrayList<>();
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private volatile String error;
+        private volatile Instant finishedAt;
+
+        private Job(int total) {
+            this.total = total;
+        }
+
+        private BulkJobResponse toResponse() {
+            return new BulkJobResponse(id, status.name(), total, workflowIds.size(), List.copyOf(workflowIds), error);
+        }
+    }
+
+    private final SignatureWorkflowRepository repository;
+    private final SignaturePreparationService preparationService;
+    private final PreparedTemplateCache templateCache;
+    private final TransactionTemplate transactionTemplate;
+    private final Path storageDir;
+    private final int batchSize;
+    private final int maxRecipients;
+    private final Duration jobTtl;
+    private final ThreadPoolExecutor jobExecutor;
+    private final ExecutorService copyExecutor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public BulkWorkflowService(
+            SignatureWorkflowRepository repository,
+            SignaturePreparationService preparationService,
+            PreparedTemplateCache templateCache,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.pdf.storage-dir}") String storageDirPath,
+            @Value("${app.pdf.bulk.batch-size}") int batchSize,
+            @Value("${app.pdf.bulk.parallelism}") int parallelism,
+            @Value("${app.pdf.bulk.max-recipients}") int maxRecipients,
+            @Value("${app.pdf.bulk.queue-capacity}") int queueCapacity,
+            @Value("${app.pdf.bulk.job-ttl}") Duration jobTtl) {
+        this.repository = repository;
+        this.preparationService = preparationService;
+        this.templateCache = templateCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.storageDir = Path.of(storageDirPath);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRecipients = maxRecipients;
+        this.jobTtl = jobTtl;
+        // Jobs run one at a time, each spreading its file copies over the copy pool; every queued job holds its upload
+        this.jobExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new CustomizableThreadFactory("pdf-bulk-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.copyExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism), new CustomizableThreadFactory("pdf-bulk-copy-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        copyExecutor.shutdownNow();
+    }
+
+    /**
+     * Queues the creation of one workflow per recipient. The job takes over the uploaded file.
+     *
+     * @throws OverloadedException if too many jobs are already waiting
+     */
+    public BulkJobResponse start(StoredUpload upload, String fileName, List<AddFieldsRequest> fields,
+                                 List<BulkRecipient> recipients) {
+        if (recipients.isEmpty()) {
+            throw new BadRequestException("No recipients given");
+        }
+        if (recipients.size() > maxRecipients) {
+            throw new BadRequestException("Too many recipients: " + recipients.size() + " (max " + maxRecipients + ")");
+        }
+        // Fail on an unknown signer role now rather than in the background
+        SignatureWorkflow layout = new SignatureWorkflow();
+        List<WorkflowField> layoutFields = fields.stream()
+                .map(req -> WorkflowService.toWorkflowField(layout, req))
+                .toList();
+
+        Job job = new Job(recipients.size());
+        jobs.put(job.id, job);
+        try {
+            jobExecutor.execute(() -> run(job, upload, fileName, fields, layoutFields, recipients));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new OverloadedException("Too many bulk jobs are waiting, try again later", Duration.ofSeconds(5));
+        }
+        return job.toResponse();
+    }
+
+    public Optional<BulkJobResponse> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toResponse);
+    }
+
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void purgeFinishedJobs() {
+        Instant threshold = Instant.now().minus(jobTtl);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(threshold));
+    }
+
+    private void run(Job job, StoredUpload upload, String fileName, List<AddFieldsRequest> fields,
+                     List<WorkflowField> layoutFields, List<BulkRecipient> recipients) {
+        job.status = JobStatus.RUNNING;
+        Path prepared = upload.path();
+        try {
+            // Prepare the upload in place, unless the template cache already has it
+            String templateKey = templateCache.keyOf(upload.sha256(), fields);
+            if (!templateCache.copyTo(templateKey, prepared)) {
+                preparationService.prepareDocument(prepared.toFile(), layoutFields);
+                templateCache.store(templateKey, prepared);
+            }
+
+            for (int from = 0; from < recipients.size(); from += batchSize) {
+                List<BulkRecipient> batch = recipients.subList(from, Math.min(from + batchSize, recipients.size()));
+                job.workflowIds.addAll(createBatch(prepared, fileName, fields, batch));
+            }
+            job.status = JobStatus.COMPLETED;
+        } catch (Exception e) {
+            log.warn("Bulk job {} failed after {} of {} workflows", job.id, job.workflowIds.size(), job.total, e);
+            job.error = e.getMessage();
+            job.status = JobStatus.FAILED;
+        } finally {
+            job.finishedAt = Instant.now();
+            try {
+                Files.deleteIfExists(prepared);
+            } catch (IOException e) {
+                log.warn("Could not delete bulk upload {}", prepared, e);
+            }
+        }
+    }
+
+    private List<Long> createBatch(Path prepared, String fileName, List<AddFieldsRequest> fields,
+                                   List<BulkRecipient> batch) {
+        return transactionTemplate.execute(tx -> {
+            List<SignatureWorkflow> workflows = new ArrayList<>();
+            for (BulkRecipient recipient : batch) {
+                SignatureWorkflow workflow = new SignatureWorkflow();
+                workflow.setOriginalFileName(fileName);
+                // The prepared copy is in place before this transaction commits
+                workflow.setStatus(WorkflowStatus.SIGNER_A_PENDING);
+                for (AddFieldsRequest req : fields) {
+                    WorkflowField wf = WorkflowService.toWorkflowField(workflow, req);
+                    // Prefilled values are also written into the recipient's PDF by writeAll
+                    if (recipient.fieldValues() != null) {
+                        wf.setValue(recipient.fieldValues().get(req.name()));
+                    }
+                    workflow.getFields().add(wf);
+                }
+                workflows.add(workflow);
+            }
+
+            workflows = repository.saveAll(workflows);
+            for (SignatureWorkflow workflow : workflows) {
+                workflow.setPdfFilePath(storageDir.resolve("workflow-" + workflow.getId() + ".pdf").toString());
+            }
+            writeAll(prepared, workflows, batch);
+            return workflows.stream().map(SignatureWorkflow::getId).toList();
+        });
+    }
+
+    /**
+     * Gives each workflow its file: a link to the prepared one, or a filled-in copy when its recipient has prefills.
+     */
+    private void writeAll(Path prepared, List<SignatureWorkflow> workflows, List<BulkRecipient> recipients) {
+        List<Future<?>> copies = new ArrayList<>();
+        for (int i = 0; i < workflows.size(); i++) {
+            Path target = Path.of(workflows.get(i).getPdfFilePath());
+            Map<String, String> fieldValues = recipients.get(i).fieldValues();
+            copies.add(copyExecutor.submit(() -> {
+                if (fieldValues == null || fieldValues.values().stream().allMatch(Objects::isNull)) {
+                    PreparedTemplateCache.link(prepared, target);
+                } else {
+                    preparationService.prefillDocument(prepared, target, fieldValues);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> copy : copies) {
+                copy.get();
+            }
+        } catch (ExecutionException | InterruptedException e) {
+            // The batch is rolled back, so none of its copies may stay behind
+            copies.forEach(copy -> copy.cancel(true));
+            for (SignatureWorkflow workflow : workflows) {
+                try {
+                    Files.deleteIfExists(Path.of(workflow.getPdfFilePath()));
+                } catch (IOException ignored) {}
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            if (cause instanceof IOException io) throw new UncheckedIOException(io);
+            throw new IllegalStateException("Copying the prepared document failed", cause);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.poc.pdf.service;
+
+/**
+ * Thrown when a request cannot be served in the current state of a workflow, such as while it is being prepared.
+ */
+public class ConflictException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConflictException(String message) {
+        super(message);
+    }
+}
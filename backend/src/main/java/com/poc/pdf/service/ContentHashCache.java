@@ -0,0 +1,86 @@
+package com.poc.pdf.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SHA-256 of the workflow PDFs, keyed by workflow id and file revision, so a document is only
+ * hashed again once it has been rewritten. Entries are evicted in least-recently-used order
+ * beyond the configured count.
+ */
+@Service
+public class ContentHashCache {
+
+    /**
+     * The SHA-256 of a PDF together with the file revision it was computed from.
+     */
+    public record Snapshot(PageImageCache.Revision revision, String sha256) {}
+
+    private final int maxEntries;
+    private final Map<Long, Snapshot> entries;
+
+    public ContentHashCache(@Value("${app.pdf.content-hash-cache.max-entries}") int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Snapshot> eldest) {
+                return size() > ContentHashCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the hex SHA-256 of the workflow's current PDF and the revision it belongs to, hashing the file
+     * if this revision has not been seen yet.
+     */
+    public Snapshot snapshot(Long workflowId, Path pdfPath) throws IOException {
+        PageImageCache.Revision revision = PageImageCache.Revision.of(pdfPath);
+        synchronized (this) {
+            Snapshot cached = entries.get(workflowId);
+            if (cached != null && cached.revision().equals(revision)) return cached;
+        }
+
+        // Hashed outside the lock; a rewrite meanwhile shows up as a new revision, and we hash again
+        while (true) {
+            String sha256 = hash(pdfPath);
+            PageImageCache.Revision hashed = PageImageCache.Revision.of(pdfPath);
+            if (hashed.equals(revision)) {
+                Snapshot snapshot = new Snapshot(revision, sha256);
+                synchronized (this) {
+                    entries.put(workflowId, snapshot);
+                }
+                return snapshot;
+            }
+            revision = hashed;
+        }
+    }
+
+    private static String hash(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
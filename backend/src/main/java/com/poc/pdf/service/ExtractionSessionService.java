@@ -0,0 +1,158 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.service.PdfFieldExtractorService.ExtractionData;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived extraction sessions: the uploaded PDF is kept on disk so that its fields can be
+ * returned right away and its pages rendered only when the client asks for them.
+ * Sessions expire after a period of inactivity and the oldest ones are dropped when the
+ * stored documents exceed the disk quota.
+ */
+@Service
+public class ExtractionSessionService {
+
+    public record SessionExtraction(String sessionId, ExtractionData data) {}
+
+    private static final class Session {
+        private final Path pdfPath;
+        private final long size;
+        private volatile Instant lastAccess = Instant.now();
+
+        private Session(Path pdfPath, long size) {
+            this.pdfPath = pdfPath;
+            this.size = size;
+        }
+    }
+
+    private final PdfFieldExtractorService extractorService;
+    private final Path sessionDir;
+    private final Duration ttl;
+    private final long maxDiskBytes;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public ExtractionSessionService(
+            PdfFieldExtractorService extractorService,
+            @Value("${app.pdf.storage-dir}") String storageDirPath,
+            @Value("${app.pdf.sessions.ttl}") Duration ttl,
+            @Value("${app.pdf.sessions.max-disk-size}") DataSize maxDiskSize) {
+        this.extractorService = extractorService;
+        this.sessionDir = Path.of(storageDirPath, "sessions");
+        this.ttl = ttl;
+        this.maxDiskBytes = maxDiskSize.toBytes();
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Moves the uploaded document under a new session and returns its fields and page layout.
+     */
+    public SessionExtraction create(Path upload) throws IOException {
+        Files.createDirectories(sessionDir);
+        String sessionId = UUID.randomUUID().toString();
+        Path pdfPath = sessionDir.resolve("session-" + sessionId + ".pdf");
+        Files.move(upload, pdfPath);
+
+        ExtractionData data;
+        try {
+            data = extractorService.extractFieldsOnly(pdfPath);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(pdfPath);
+            throw e;
+        }
+
+        sessions.put(sessionId, new Session(pdfPath, Files.size(pdfPath)));
+        enforceQuota(sessionId);
+        return new SessionExtraction(sessionId, data);
+    }
+
+    /**
+     * Renders one page of a session, or returns empty if the session is unknown or expired.
+     */
+    public Optional<byte[]> renderPage(String sessionId, int pageIndex, RenderOptions options) throws IOException {
+        Session session = sessions.get(sessionId);
+        if (session == null) return Optional.empty();
+        if (isExpired(session, Instant.now())) {
+            remove(sessionId);
+            return Optional.empty();
+        }
+        session.lastAccess = Instant.now();
+        return Optional.of(extractorService.renderFlattenedPage(session.pdfPath, pageIndex, options));
+    }
+
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        sessions.forEach((id, session) -> {
+            if (isExpired(session, now)) remove(id);
+        });
+    }
+
+    @PostConstruct
+    @PreDestroy
+    public void deleteStoredSessions() throws IOException {
+        // Sessions only live in memory, so files left by a previous run are orphans
+        sessions.keySet().forEach(this::remove);
+        if (!Files.isDirectory(sessionDir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(sessionDir, "session-*.pdf")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private synchronized void enforceQuota(String newSessionId) {
+        long total = sessions.values().stream().mapToLong(s -> s.size).sum();
+        if (total <= maxDiskBytes) return;
+
+        var oldestFirst = sessions.entrySet().stream()
+                .filter(e -> !e.getKey().equals(newSessionId))
+                .sorted(Comparator.comparing(e -> e.getValue().lastAccess))
+                .toList();
+        for (var entry : oldestFirst) {
+            if (total <= maxDiskBytes) return;
+            total -= entry.getValue().size;
+            remove(entry.getKey());
+        }
+        if (total > maxDiskBytes) {
+            remove(newSessionId);
+            throw new PayloadTooLargeException("Document exceeds the extraction session quota");
+        }
+    }
+
+    private boolean isExpired(Session session, Instant now) {
+        return session.lastAccess.plus(ttl).isBefore(now);
+    }
+
+    private void remove(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session == null) return;
+        try {
+            Files.deleteIfExists(session.pdfPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.poc.pdf.service;
+
+/**
+ * Thrown when a request names something that does not exist, such as a page past the end of a document.
+ */
+public class NotFoundException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
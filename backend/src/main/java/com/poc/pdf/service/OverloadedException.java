@@ -0,0 +1,22 @@
+package com.poc.pdf.service;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a request is shed because the server is saturated. Carries a hint for when to try again.
+ */
+public class OverloadedException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public OverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
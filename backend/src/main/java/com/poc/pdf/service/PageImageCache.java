@@ -0,0 +1,178 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.model.PageInfo;
+import com.poc.pdf.model.RenderOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory cache of rendered workflow pages, keyed by workflow id and file revision.
+ * Each entry holds the page layout of the revision and the pages rendered so far, per set of
+ * render options, so single pages can be filled in lazily. Entries are weighted by their
+ * encoded size and evicted in least-recently-used order once the configured memory bound
+ * is exceeded.
+ */
+@Service
+public class PageImageCache {
+
+    /**
+     * Identifies one on-disk revision of a PDF: every rewrite changes its size or modification time.
+     */
+    public record Revision(long size, long lastModified) {
+
+        public static Revision of(Path pdfPath) throws IOException {
+            BasicFileAttributes attrs = Files.readAttributes(pdfPath, BasicFileAttributes.class);
+            return new Revision(attrs.size(), attrs.lastModifiedTime().toMillis());
+        }
+
+        /**
+         * Whether this revision was written after {@code other}; within one timestamp, signatures only make the file grow.
+         */
+        public boolean isNewerThan(Revision other) {
+            return lastModified != other.lastModified ? lastModified > other.lastModified : size > other.size;
+        }
+    }
+
+    private record ImageKey(int pageIndex, RenderOptions options) {}
+
+    private static final class Entry {
+        private final Revision revision;
+        private final List<PageInfo> pages;
+        private final Map<ImageKey, byte[]> images = new HashMap<>();
+        private long weight;
+
+        private Entry(Revision revision, List<PageInfo> pages) {
+            this.revision = revision;
+            this.pages = List.copyOf(pages);
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public PageImageCache(@Value("${app.pdf.page-cache.max-size}") DataSize maxSize) {
+        this.maxBytes = maxSize.toBytes();
+    }
+
+    /**
+     * Returns the page layout of this exact revision, or null if absent or stale.
+     */
+    public synchronized List<PageInfo> getPages(Long workflowId, Revision revision) {
+        Entry entry = lookup(workflowId, revision);
+        return entry != null ? entry.pages : null;
+    }
+
+    /**
+     * Returns one rendered page of this exact revision, or null if it has not been rendered yet.
+     */
+    public synchronized byte[] getImage(Long workflowId, Revision revision, int pageIndex, RenderOptions options) {
+        Entry entry = lookup(workflowId, revision);
+        if (entry == null) return null;
+        return entry.images.get(new ImageKey(pageIndex, options));
+    }
+
+    /**
+     * Registers the page layout of a revision, replacing whatever was cached for an older one.
+     * Ignored if a newer revision is cached already.
+     */
+    public synchronized void putPages(Long workflowId, Revision revision, List<PageInfo> pages) {
+        Entry current = entries.get(workflowId);
+        if (current != null && !revision.isNewerThan(current.revision)) return;
+        remove(workflowId);
+        entries.put(workflowId, new Entry(revision, pages));
+    }
+
+    /**
+     * Stores a rendered page. Ignored if the layout of that revision is not (or no longer) cached.
+     */
+    public synchronized void putImage(Long workflowId, Revision revision, int pageIndex, RenderOptions options, byte[] image) {
+        Entry entry = lookup(workflowId, revision);
+        if (entry == null || pageIndex < 0 || pageIndex >= entry.pages.size()) return;
+        // A page larger than the whole budget would only flush everything else
+        if (image.length > maxBytes) return;
+
+        byte[] previous = entry.images.put(new ImageKey(pageIndex, options), image);
+        long delta = image.length - (previous != null ? previous.length : 0);
+        entry.weight += delta;
+        totalBytes += delta;
+        evict(entry);
+    }
+
+    /**
+     * Moves the cached pages of revision {@code from} over to revision {@code to}, dropping the images of
+     * {@code dirtyPages}. Meant for incremental updates, which leave the page layout and all other pages alone.
+     */
+    public synchronized void carryForward(Long workflowId, Revision from, Revision to, Set<Integer> dirtyPages) {
+        Entry previous = entries.get(workflowId);
+        remove(workflowId);
+        if (previous == null || !previous.revision.equals(from)) return;
+
+        Entry next = new Entry(to, previous.pages);
+        previous.images.forEach((key, image) -> {
+            if (dirtyPages.contains(key.pageIndex())) return;
+            next.images.put(key, image);
+            next.weight += image.length;
+        });
+        entries.put(workflowId, next);
+        totalBytes += next.weight;
+    }
+
+    /**
+     * Drops the pages of a workflow after its PDF has been rewritten.
+     */
+    public synchronized void invalidate(Long workflowId) {
+        remove(workflowId);
+    }
+
+    /**
+     * The entry of this exact revision. An entry for an older revision is dropped on the way; one for a newer
+     * revision is left alone, as the caller is the one behind.
+     */
+    private Entry lookup(Long workflowId, Revision revision) {
+        Entry entry = entries.get(workflowId);
+        if (entry == null) return null;
+        if (!entry.revision.equals(revision)) {
+            if (revision.isNewerThan(entry.revision)) remove(workflowId);
+            return null;
+        }
+        return entry;
+    }
+
+    private void evict(Entry current) {
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            if (entry == current) continue;
+            totalBytes -= entry.weight;
+            eldest.remove();
+        }
+        // Only the entry being filled is left: shed its other pages rather than exceed the bound
+        Iterator<byte[]> images = current.images.values().iterator();
+        while (totalBytes > maxBytes && images.hasNext()) {
+            byte[] image = images.next();
+            images.remove();
+            current.weight -= image.length;
+            totalBytes -= image.length;
+        }
+    }
+
+    private void remove(Long workflowId) {
+        Entry removed = entries.remove(workflowId);
+        if (removed != null) {
+            totalBytes -= removed.weight;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.model.ImageFormat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Encodes rendered pages. Colour pages without any colour are reduced to 8-bit grayscale, or to 1 bit
+ * per pixel when they only contain black and white, before being written out; pages rendered in
+ * grayscale or bilevel already are written as they are. The chosen format's writer is tuned from configuration.
+ */
+@Service
+public class PageImageEncoder {
+
+    private final int pngDeflateLevel;
+    private final float jpegQuality;
+
+    public PageImageEncoder(
+            @Value("${app.pdf.encoder.png-deflate-level}") int pngDeflateLevel,
+            @Value("${app.pdf.encoder.jpeg-quality}") float jpegQuality) {
+        this.pngDeflateLevel = Math.max(0, Math.min(9, pngDeflateLevel));
+        this.jpegQuality = Math.max(0, Math.min(1, jpegQuality));
+    }
+
+    /**
+     * Picks the format to answer an {@code Accept} header with: the most preferred acceptable
+     * type this server can write, PNG when the header is missing, invalid or matches nothing.
+     */
+    public ImageFormat negotiate(String acceptHeader) {
+        if (acceptHeader == null || acceptHeader.isBlank()) return ImageFormat.PNG;
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(acceptHeader);
+        } catch (InvalidMediaTypeException e) {
+            return ImageFormat.PNG;
+        }
+        List<MediaType> byPreference = accepted.stream()
+                .filter(type -> type.getQualityValue() > 0)
+                .sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed())
+                .toList();
+        for (MediaType type : byPreference) {
+            for (ImageFormat format : ImageFormat.values()) {
+                if (type.includes(format.mediaType()) && isSupported(format)) return format;
+            }
+        }
+        return ImageFormat.PNG;
+    }
+
+    public boolean isSupported(ImageFormat format) {
+        return format.isWritable();
+    }
+
+    public byte[] encode(BufferedImage image, ImageFormat format) throws IOException {
+        // JPEG has no 1-bit mode, grayscale is as far as it goes
+        BufferedImage reduced = reduceColours(image, format != ImageFormat.JPEG);
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format.formatName());
+        if (!writers.hasNext()) {
+            throw new IllegalArgumentException("Unsupported image format: " + format);
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (format != ImageFormat.WEBP && param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            // The PNG writer maps quality linearly onto the deflate level, 1.0 being level 0
+            param.setCompressionQuality(format == ImageFormat.PNG ? 1 - pngDeflateLevel / 9f : jpegQuality);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            writer.write(null, new IIOImage(reduced, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a grayscale or bilevel copy of an RGB page that has no colour, or the page itself.
+     */
+    private BufferedImage reduceColours(BufferedImage image, boolean allowBilevel) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB
+                || !(image.getRaster().getDataBuffer() instanceof DataBufferInt buffer)) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = buffer.getData();
+
+        boolean bilevel = allowBilevel;
+        for (int i = 0; i < width * height; i++) {
+            int rgb = pixels[i];
+            int blue = rgb & 0xff;
+            if (((rgb >> 16) & 0xff) != blue || ((rgb >> 8) & 0xff) != blue) return image;
+            if (blue != 0 && blue != 0xff) bilevel = false;
+        }
+
+        // Copy samples directly: drawing into a gray image would go through a colour conversion
+        BufferedImage reduced = new BufferedImage(width, height,
+                bilevel ? BufferedImage.TYPE_BYTE_BINARY : BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = reduced.getRaster();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int level = pixels[y * width + x] & 0xff;
+                row[x] = bilevel ? level >> 7 : level;
+            }
+            raster.setSamples(0, y, width, 1, 0, row);
+        }
+        return reduced;
+    }
+}
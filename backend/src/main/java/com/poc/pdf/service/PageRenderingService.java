@@ -0,0 +1,190 @@
+package com.poc.pdf.service;
+
+import jakarta.annotation.PreDestroy;
+import com.poc.pdf.model.ImageFormat;
+import com.poc.pdf.model.PageInfo;
+import com.poc.pdf.model.RenderOptions;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Renders and encodes PDF pages, spreading large documents over a bounded worker pool.
+ * PDFBox documents are not thread-safe, so every extra worker renders from its own copy
+ * opened from a shared read-only source, while the calling thread renders from the
+ * document it already holds. Pages are handed out one at a time and the results are
+ * returned in the requested order.
+ */
+@Service
+public class PageRenderingService {
+
+    /**
+     * Opens an independent copy of the document being rendered, or returns null if none can be opened right now.
+     */
+    @FunctionalInterface
+    public interface DocumentSource {
+        PDDocument open() throws IOException;
+    }
+
+    private final PageImageEncoder imageEncoder;
+    private final PdfMetrics metrics;
+    private final int parallelism;
+    private final int minPagesPerWorker;
+    private final ExecutorService executor;
+
+    public PageRenderingService(
+            PageImageEncoder imageEncoder,
+            PdfMetrics metrics,
+            @Value("${app.pdf.render.parallelism}") int parallelism,
+            @Value("${app.pdf.render.min-pages-per-worker}") int minPagesPerWorker) {
+        this.imageEncoder = imageEncoder;
+        this.metrics = metrics;
+        this.parallelism = Math.max(1, parallelism);
+        this.minPagesPerWorker = Math.max(1, minPagesPerWorker);
+        this.executor = Executors.newFixedThreadPool(this.parallelism, new CustomizableThreadFactory("pdf-render-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public List<byte[]> renderPages(PDDocument document, DocumentSource source, RenderOptions options) throws IOException {
+        return renderPages(document, source, IntStream.range(0, document.getNumberOfPages()).boxed().toList(), options);
+    }
+
+    /**
+     * Renders the given pages of {@code document}. Extra workers are only used when there are
+     * enough pages to keep each of them busy; they open their own copy through {@code source}.
+     */
+    public List<byte[]> renderPages(PDDocument document, DocumentSource source, List<Integer> pageIndexes,
+                                    RenderOptions options) throws IOException {
+        byte[][] results = new byte[pageIndexes.size()][];
+        AtomicInteger cursor = new AtomicInteger();
+
+        int workers = Math.min(parallelism, pageIndexes.size() / minPagesPerWorker);
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int w = 1; w < workers; w++) {
+            helpers.add(executor.submit(metrics.propagate(() -> {
+                // Nothing left by the time this worker got a thread: skip loading a copy
+                if (cursor.get() >= pageIndexes.size()) return null;
+                try (PDDocument copy = source.open()) {
+                    // No memory budget for a copy: the other workers take over its share
+                    if (copy == null) return null;
+                    renderInto(copy, pageIndexes, options, cursor, results);
+                }
+                return null;
+            })));
+        }
+
+        // The calling thread works too, so a saturated pool never stalls the request
+        renderInto(document, pageIndexes, options, cursor, results);
+
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                throw new IOException("Page rendering failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while rendering pages");
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    public byte[] renderPage(PDDocument document, int pageIndex, RenderOptions options) throws IOException {
+        return renderPage(createRenderer(document, options), document, pageIndex, options);
+    }
+
+    /**
+     * Page sizes in PDF points, as they will appear once rendered.
+     */
+    public List<PageInfo> describePages(PDDocument document) {
+        List<PageInfo> pages = new ArrayList<>();
+        for (int i = 0; i < document.getNumberOfPages(); i++) {
+            PDPage page = document.getPage(i);
+            pages.add(new PageInfo(i, renderedWidth(page), renderedHeight(page)));
+        }
+        return pages;
+    }
+
+    private void renderInto(PDDocument document, List<Integer> pageIndexes, RenderOptions options,
+                            AtomicInteger cursor, byte[][] results) throws IOException {
+        PDFRenderer renderer = createRenderer(document, options);
+        int next;
+        while ((next = cursor.getAndIncrement()) < pageIndexes.size()) {
+            try {
+                results[next] = renderPage(renderer, document, pageIndexes.get(next), options);
+            } catch (IOException | RuntimeException e) {
+                // Stop the other workers, the whole render is lost anyway
+                cursor.set(pageIndexes.size());
+                throw e;
+            }
+        }
+    }
+
+    private PDFRenderer createRenderer(PDDocument document, RenderOptions options) {
+        PDFRenderer renderer = new PDFRenderer(document);
+        if (options.profile().fast()) {
+            // Thumbnails: downsample embedded images and skip antialiasing
+            renderer.setSubsamplingAllowed(true);
+            renderer.setRenderingHints(new RenderingHints(Map.of(
+                    RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF,
+                    RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF,
+                    RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED,
+                    RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR)));
+        }
+        return renderer;
+    }
+
+    private byte[] renderPage(PDFRenderer renderer, PDDocument document, int pageIndex, RenderOptions options) throws IOException {
+        float dpi = options.dpiFor(renderedWidth(document.getPage(pageIndex)));
+        ImageType imageType = imageType(options);
+        BufferedImage image = metrics.stage(PdfMetrics.Stage.RENDER, () -> renderer.renderImageWithDPI(pageIndex, dpi, imageType));
+        byte[] encoded = metrics.stage(PdfMetrics.Stage.ENCODE, () -> imageEncoder.encode(image, options.format()));
+        metrics.pageRendered(options.format(), encoded.length);
+        return encoded;
+    }
+
+    private static ImageType imageType(RenderOptions options) {
+        return switch (options.colorMode()) {
+            case AUTO -> ImageType.RGB;
+            case GRAY -> ImageType.GRAY;
+            // JPEG has no 1-bit mode
+            case BINARY -> options.format() == ImageFormat.JPEG ? ImageType.GRAY : ImageType.BINARY;
+        };
+    }
+
+    // Rendered images follow the crop box, turned by the page rotation
+    private float renderedWidth(PDPage page) {
+        PDRectangle box = page.getCropBox();
+        return page.getRotation() % 180 != 0 ? box.getHeight() : box.getWidth();
+    }
+
+    private float renderedHeight(PDPage page) {
+        PDRectangle box = page.getCropBox();
+        return page.getRotation() % 180 != 0 ? box.getWidth() : box.getHeight();
+    }
+}
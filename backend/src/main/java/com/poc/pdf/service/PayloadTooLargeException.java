@@ -0,0 +1,13 @@
+package com.poc.pdf.service;
+
+/**
+ * Thrown when a request carries more than the server agrees to hold, such as a document larger than a whole quota.
+ */
+public class PayloadTooLargeException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
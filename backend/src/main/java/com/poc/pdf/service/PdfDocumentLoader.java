@@ -0,0 +1,149 @@
+package com.poc.pdf.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccess;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Opens every PDF the services work on. Each open document may keep a bounded amount of its
+ * stream data in memory and spills the rest to scratch files; the sum of these allowances over
+ * all open documents is capped by a global budget. A load waits for budget to free up and fails
+ * once the wait times out. The budget is held until the document is closed.
+ */
+@Service
+public final class PdfDocumentLoader {
+
+    private final MemoryUsageSetting memoryUsage;
+    private final long memoryPerDocument;
+    private final int documentSlots;
+    private final Duration acquireTimeout;
+    private final Semaphore budget;
+    private final Counter rejected;
+    private final PdfMetrics metrics;
+
+    public PdfDocumentLoader(
+            @Value("${app.pdf.storage-dir}") String storageDirPath,
+            @Value("${app.pdf.loader.memory-per-document}") DataSize memoryPerDocument,
+            @Value("${app.pdf.loader.memory-budget}") DataSize memoryBudget,
+            @Value("${app.pdf.loader.acquire-timeout}") Duration acquireTimeout,
+            MeterRegistry meterRegistry,
+            PdfMetrics metrics) throws IOException {
+        Path scratchDir = Files.createDirectories(Path.of(storageDirPath, "scratch"));
+        this.memoryPerDocument = memoryPerDocument.toBytes();
+        this.memoryUsage = MemoryUsageSetting.setupMixed(this.memoryPerDocument).setTempDir(scratchDir.toFile());
+        this.documentSlots = (int) Math.max(1, memoryBudget.toBytes() / this.memoryPerDocument);
+        this.acquireTimeout = acquireTimeout;
+        this.budget = new Semaphore(documentSlots, true);
+        this.metrics = metrics;
+
+        Gauge.builder("pdf.loader.memory.budget", () -> (double) documentSlots * this.memoryPerDocument)
+                .baseUnit("bytes")
+                .description("Main memory that open documents may use for stream data")
+                .register(meterRegistry);
+        Gauge.builder("pdf.loader.memory.reserved", () -> (double) reservedBytes())
+                .baseUnit("bytes")
+                .description("Part of the budget held by open documents")
+                .register(meterRegistry);
+        Gauge.builder("pdf.loader.waiting", budget, Semaphore::getQueueLength)
+                .description("Loads waiting for budget")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("pdf.loader.rejected")
+                .description("Loads that timed out waiting for budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a document, waiting for memory budget if necessary.
+     */
+    public PDDocument load(Path pdfPath) throws IOException {
+        try {
+            if (!budget.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new OverloadedException("Too many documents are being processed, try again later", Duration.ofSeconds(1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for memory budget");
+        }
+        return open(pdfPath);
+    }
+
+    /**
+     * Opens a document only if budget is available right away, for optional work such as extra render workers.
+     * Returns null otherwise.
+     */
+    public PDDocument tryLoad(Path pdfPath) throws IOException {
+        return budget.tryAcquire() ? open(pdfPath) : null;
+    }
+
+    public long reservedBytes() {
+        return (long) (documentSlots - budget.availablePermits()) * memoryPerDocument;
+    }
+
+    private PDDocument open(Path pdfPath) throws IOException {
+        BudgetedStreamCache cache;
+        try {
+            cache = new BudgetedStreamCache(new ScratchFile(memoryUsage));
+        } catch (IOException | RuntimeException e) {
+            budget.release();
+            throw e;
+        }
+        try {
+            long size = Files.size(pdfPath);
+            // Parsed lazily through a RandomAccessReadBufferedFile; the document closes the cache
+            return metrics.stage(PdfMetrics.Stage.LOAD, () -> {
+                PDDocument document = Loader.loadPDF(pdfPath.toFile(), () -> cache);
+                metrics.documentOpened(document.getNumberOfPages(), size);
+                return document;
+            });
+        } catch (IOException | RuntimeException e) {
+            cache.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the budget back when the owning document closes its stream cache.
+     */
+    private final class BudgetedStreamCache implements RandomAccessStreamCache {
+        private final RandomAccessStreamCache delegate;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private BudgetedStreamCache(RandomAccessStreamCache delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public RandomAccess createBuffer() throws IOException {
+            return delegate.createBuffer();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed.compareAndSet(false, true)) return;
+            try {
+                delegate.close();
+            } finally {
+                budget.release();
+            }
+        }
+    }
+}
@@ -2,7 +2,8 @@ package com.poc.pdf.service;
 
 import com.poc.pdf.model.AddFieldsRequest;
 import com.poc.pdf.model.PdfField.FieldType;
-import org.apache.pdfbox.Loader;
+import com.poc.pdf.service.AdmissionService.Operation;
+import com.poc.pdf.service.PdfMetrics.Stage;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -16,47 +17,61 @@ import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
 import org.apache.pdfbox.pdmodel.interactive.form.*;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.List;
 
 @Service
 public class PdfFieldAdderService {
 
-    public byte[] addFields(byte[] pdfBytes, List<AddFieldsRequest> fields) throws IOException {
-        try (PDDocument document = Loader.loadPDF(pdfBytes)) {
-            PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
-            if (acroForm == null) {
-                acroForm = new PDAcroForm(document);
-                document.getDocumentCatalog().setAcroForm(acroForm);
-            }
+    private final PdfDocumentLoader documentLoader;
+    private final PdfMetrics metrics;
+
+    public PdfFieldAdderService(PdfDocumentLoader documentLoader, PdfMetrics metrics) {
+        this.documentLoader = documentLoader;
+        this.metrics = metrics;
+    }
 
-            PDResources defaultResources = acroForm.getDefaultResources();
-            if (defaultResources == null) {
-                defaultResources = new PDResources();
-                acroForm.setDefaultResources(defaultResources);
+    public void addFields(Path pdfPath, List<AddFieldsRequest> fields, OutputStream out) throws IOException {
+        metrics.operation(Operation.PREPARE, () -> {
+            try (PDDocument document = documentLoader.load(pdfPath)) {
+                metrics.stage(Stage.ACROFORM, () -> addFormFields(document, fields));
+                OutputStream counted = metrics.countWritten(out);
+                metrics.stage(Stage.SAVE, () -> document.save(counted));
             }
-            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
-            defaultResources.put(COSName.getPDFName("Helv"), font);
-            acroForm.setDefaultAppearance("/Helv 10 Tf 0 g");
+            return null;
+        });
+    }
 
-            for (AddFieldsRequest req : fields) {
-                PDField field = createField(acroForm, req);
+    private void addFormFields(PDDocument document, List<AddFieldsRequest> fields) throws IOException {
+        PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
+        if (acroForm == null) {
+            acroForm = new PDAcroForm(document);
+            document.getDocumentCatalog().setAcroForm(acroForm);
+        }
+
+        PDResources defaultResources = acroForm.getDefaultResources();
+        if (defaultResources == null) {
+            defaultResources = new PDResources();
+            acroForm.setDefaultResources(defaultResources);
+        }
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        defaultResources.put(COSName.getPDFName("Helv"), font);
+        acroForm.setDefaultAppearance("/Helv 10 Tf 0 g");
 
-                PDAnnotationWidget widget = field.getWidgets().get(0);
-                PDRectangle rect = new PDRectangle(req.x(), req.y(), req.width(), req.height());
-                widget.setRectangle(rect);
+        for (AddFieldsRequest req : fields) {
+            PDField field = createField(acroForm, req);
 
-                PDPage page = document.getPage(req.page());
-                widget.setPage(page);
-                page.getAnnotations().add(widget);
+            PDAnnotationWidget widget = field.getWidgets().get(0);
+            PDRectangle rect = new PDRectangle(req.x(), req.y(), req.width(), req.height());
+            widget.setRectangle(rect);
 
-                acroForm.getFields().add(field);
-            }
+            PDPage page = document.getPage(req.page());
+            widget.setPage(page);
+            page.getAnnotations().add(widget);
 
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            document.save(out);
-            return out.toByteArray();
+            acroForm.getFields().add(field);
         }
     }
 
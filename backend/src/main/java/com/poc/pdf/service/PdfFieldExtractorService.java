@@ -1,67 +1,167 @@
 package com.poc.pdf.service;
 
+import com.poc.pdf.model.PageInfo;
 import com.poc.pdf.model.PdfField;
 import com.poc.pdf.model.PdfField.FieldType;
-import org.apache.pdfbox.Loader;
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.service.AdmissionService.Operation;
+import com.poc.pdf.service.PdfMetrics.Stage;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
 import org.apache.pdfbox.pdmodel.interactive.form.*;
-import org.apache.pdfbox.rendering.PDFRenderer;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class PdfFieldExtractorService {
 
-    public record ExtractionData(List<PdfField> fields, List<byte[]> pageImages) {}
+    public record ExtractionData(List<PdfField> fields, List<PageInfo> pages, List<byte[]> pageImages) {}
 
-    public ExtractionData extractAndFlatten(byte[] pdfBytes) throws IOException {
-        List<PdfField> fields = new ArrayList<>();
+    /**
+     * Receives a streamed extraction: the fields once, then every page in order.
+     */
+    public interface ExtractionListener {
+        void onFields(List<PdfField> fields, int pageCount) throws IOException;
 
-        try (PDDocument document = Loader.loadPDF(pdfBytes)) {
-            PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
-            if (acroForm != null) {
-                for (PDField field : acroForm.getFields()) {
-                    processField(field, fields, document);
-                }
+        void onPage(int pageIndex, byte[] image) throws IOException;
+    }
+
+    private final PdfDocumentLoader documentLoader;
+    private final PageRenderingService renderingService;
+    private final PdfMetrics metrics;
+
+    public PdfFieldExtractorService(PdfDocumentLoader documentLoader, PageRenderingService renderingService,
+                                    PdfMetrics metrics) {
+        this.documentLoader = documentLoader;
+        this.renderingService = renderingService;
+        this.metrics = metrics;
+    }
+
+    public ExtractionData extractAndFlatten(Path pdfPath, RenderOptions options) throws IOException {
+        return metrics.operation(Operation.EXTRACT, () -> {
+            try (PDDocument document = documentLoader.load(pdfPath)) {
+                List<PdfField> fields = extractAndRemoveForm(document);
+
+                // Extra render workers flatten their own copy of the original file
+                List<byte[]> pageImages = renderingService.renderPages(document, () -> loadFlattened(pdfPath), options);
+
+                return new ExtractionData(fields, renderingService.describePages(document), pageImages);
+            }
+        });
+    }
+
+    /**
+     * Same extraction, but pages are rendered one after another and handed over immediately,
+     * so at most one rendered page is held in memory.
+     */
+    public void extractAndStream(Path pdfPath, RenderOptions options, ExtractionListener listener) throws IOException {
+        metrics.operation(Operation.EXTRACT, () -> {
+            try (PDDocument document = documentLoader.load(pdfPath)) {
+                List<PdfField> fields = extractAndRemoveForm(document);
+                listener.onFields(fields, document.getNumberOfPages());
 
-                // Remove field widget annotations from pages
-                for (PDPage page : document.getPages()) {
-                    List<PDAnnotation> annotations = page.getAnnotations();
-                    annotations.removeIf(a -> a instanceof PDAnnotationWidget);
-                    page.setAnnotations(annotations);
+                for (int i = 0; i < document.getNumberOfPages(); i++) {
+                    listener.onPage(i, renderingService.renderPage(document, i, options));
                 }
+            }
+            return null;
+        });
+    }
 
-                // Remove the form itself
-                document.getDocumentCatalog().setAcroForm(null);
+    /**
+     * Reads the fields and page layout of a stored PDF without rendering anything.
+     */
+    public ExtractionData extractFieldsOnly(Path pdfPath) throws IOException {
+        return metrics.operation(Operation.EXTRACT, () -> {
+            try (PDDocument document = documentLoader.load(pdfPath)) {
+                List<PdfField> fields = metrics.stage(Stage.ACROFORM, () -> extractFields(document));
+                return new ExtractionData(fields, renderingService.describePages(document), List.of());
             }
+        });
+    }
 
-            PDFRenderer renderer = new PDFRenderer(document);
-            List<byte[]> pageImages = new ArrayList<>();
-            for (int i = 0; i < document.getNumberOfPages(); i++) {
-                BufferedImage image = renderer.renderImageWithDPI(i, 150);
-                ByteArrayOutputStream imgOut = new ByteArrayOutputStream();
-                ImageIO.write(image, "png", imgOut);
-                pageImages.add(imgOut.toByteArray());
+    /**
+     * Renders one page of a stored PDF the way {@link #extractAndFlatten} would, without its field widgets.
+     */
+    public byte[] renderFlattenedPage(Path pdfPath, int pageIndex, RenderOptions options) throws IOException {
+        return metrics.operation(Operation.RENDER, () -> {
+            try (PDDocument document = documentLoader.load(pdfPath)) {
+                if (pageIndex < 0 || pageIndex >= document.getNumberOfPages()) {
+                    throw new NotFoundException("Page not found: " + pageIndex);
+                }
+                // Only the rendered page needs its widgets removed
+                removeWidgets(document.getPage(pageIndex));
+                return renderingService.renderPage(document, pageIndex, options);
+            }
+        });
+    }
+
+    private List<PdfField> extractAndRemoveForm(PDDocument document) throws IOException {
+        return metrics.stage(Stage.ACROFORM, () -> {
+            List<PdfField> fields = extractFields(document);
+            flatten(document);
+            return fields;
+        });
+    }
+
+    private List<PdfField> extractFields(PDDocument document) {
+        List<PdfField> fields = new ArrayList<>();
+        PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
+        if (acroForm != null) {
+            WidgetPages widgetPages = new WidgetPages(document);
+            for (PDField field : acroForm.getFields()) {
+                processField(field, fields, widgetPages);
             }
+        }
+        return fields;
+    }
+
+    private PDDocument loadFlattened(Path pdfPath) throws IOException {
+        PDDocument document = documentLoader.tryLoad(pdfPath);
+        if (document == null) return null;
+        try {
+            metrics.stage(Stage.ACROFORM, () -> flatten(document));
+            return document;
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
+        }
+    }
+
+    private void flatten(PDDocument document) throws IOException {
+        if (document.getDocumentCatalog().getAcroForm() == null) return;
 
-            return new ExtractionData(fields, pageImages);
+        // Remove field widget annotations from pages
+        for (PDPage page : document.getPages()) {
+            removeWidgets(page);
         }
+
+        // Remove the form itself
+        document.getDocumentCatalog().setAcroForm(null);
+    }
+
+    private void removeWidgets(PDPage page) throws IOException {
+        List<PDAnnotation> annotations = page.getAnnotations();
+        annotations.removeIf(a -> a instanceof PDAnnotationWidget);
+        page.setAnnotations(annotations);
     }
 
-    private void processField(PDField field, List<PdfField> fields, PDDocument document) {
+    private void processField(PDField field, List<PdfField> fields, WidgetPages widgetPages) {
         if (field instanceof PDNonTerminalField nonTerminal) {
             for (PDField child : nonTerminal.getChildren()) {
-                processField(child, fields, document);
+                processField(child, fields, widgetPages);
             }
             return;
         }
@@ -80,23 +180,14 @@ public class PdfFieldExtractorService {
                 height = rect.getHeight();
             }
             PDPage widgetPage = widget.getPage();
-            if (widgetPage != null) {
-                page = document.getPages().indexOf(widgetPage);
+            int index = widgetPages.indexOf(widget, widgetPage);
+            if (index >= 0) {
+                page = index;
+                pageHeight = widgetPages.height(index);
+            } else if (widgetPage != null) {
+                // Points to a page outside the page tree
+                page = -1;
                 pageHeight = widgetPage.getMediaBox().getHeight();
-            } else {
-                // Fallback: search pages for this widget annotation
-                for (int i = 0; i < document.getNumberOfPages(); i++) {
-                    PDPage p = document.getPage(i);
-                    try {
-                        for (PDAnnotation ann : p.getAnnotations()) {
-                            if (ann.getCOSObject() == widget.getCOSObject()) {
-                                page = i;
-                                pageHeight = p.getMediaBox().getHeight();
-                                break;
-                            }
-                        }
-                    } catch (IOException ignored) {}
-                }
             }
         }
 
@@ -108,4 +199,44 @@ public class PdfFieldExtractorService {
             fields.add(new PdfField(radioButton.getFullyQualifiedName(), FieldType.RADIO, radioButton.getValue(), x, y, width, height, page, pageHeight));
         }
     }
+
+    /**
+     * Page index and height for every widget, from a single pass over the page tree: looked up by the
+     * page the widget points to, or else by the page listing it among its annotations.
+     */
+    private static final class WidgetPages {
+        private final Map<COSDictionary, Integer> pageIndexes = new IdentityHashMap<>();
+        private final Map<COSDictionary, Integer> annotationPages = new IdentityHashMap<>();
+        private final float[] heights;
+
+        private WidgetPages(PDDocument document) {
+            heights = new float[document.getNumberOfPages()];
+            int index = 0;
+            for (PDPage page : document.getPages()) {
+                pageIndexes.put(page.getCOSObject(), index);
+                heights[index] = page.getMediaBox().getHeight();
+                COSArray annotations = page.getCOSObject().getCOSArray(COSName.ANNOTS);
+                if (annotations != null) {
+                    for (int i = 0; i < annotations.size(); i++) {
+                        // The last page listing an annotation wins, as the former search over every page did
+                        if (annotations.getObject(i) instanceof COSDictionary annotation) {
+                            annotationPages.put(annotation, index);
+                        }
+                    }
+                }
+                index++;
+            }
+        }
+
+        private int indexOf(PDAnnotationWidget widget, PDPage widgetPage) {
+            Integer index = widgetPage != null
+                    ? pageIndexes.get(widgetPage.getCOSObject())
+                    : annotationPages.get(widget.getCOSObject());
+            return index != null ? index : -1;
+        }
+
+        private float height(int index) {
+            return heights[index];
+        }
+    }
 }
@@ -0,0 +1,225 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.model.ImageFormat;
+import com.poc.pdf.service.AdmissionService.Operation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.ObservationView;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * Times the PDF work of the services. A service call runs as an operation ({@code pdf.operation})
+ * made of stages ({@code pdf.stage}): load, acroform, render, encode, base64, cms-sign and save.
+ * Both are observations, recorded as timers tagged with the operation class and with page-count and
+ * size buckets of the document it loaded; their {@code .active} long task timers show what is in flight.
+ * With a tracing bridge on the classpath every operation and stage also becomes a span.
+ * Bytes read and written, pages rendered and document shapes are counted per operation next to them.
+ */
+@Service
+public class PdfMetrics {
+
+    public enum Stage {
+        LOAD("load"), ACROFORM("acroform"), RENDER("render"), ENCODE("encode"), BASE64("base64"),
+        CMS_SIGN("cms-sign"), SAVE("save");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final String OPERATION = "pdf.operation";
+    private static final String STAGE = "pdf.stage";
+    private static final String OPERATION_TAG = "operation";
+    private static final String STAGE_TAG = "stage";
+    private static final String PAGES_TAG = "pages";
+    private static final String SIZE_TAG = "size";
+    // Work done outside of any operation, and buckets of an operation that has not loaded a document yet
+    private static final String NONE = "none";
+    private static final String UNKNOWN = "unknown";
+
+    private final ObservationRegistry observationRegistry;
+    private final MeterRegistry meterRegistry;
+
+    public PdfMetrics(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        this.observationRegistry = observationRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs {@code work} as an operation of the given class. Called from within another operation,
+     * the work simply counts towards that one.
+     */
+    public <T, E extends Throwable> T operation(Operation operation, Observation.CheckedCallable<T, E> work) throws E {
+        if (currentOperation() != null) return work.call();
+        Observation observation = Observation.createNotStarted(OPERATION, observationRegistry)
+                .lowCardinalityKeyValue(OPERATION_TAG, operation.name().toLowerCase())
+                .lowCardinalityKeyValue(PAGES_TAG, UNKNOWN)
+                .lowCardinalityKeyValue(SIZE_TAG, UNKNOWN);
+        return observe(observation, null, work);
+    }
+
+    /**
+     * Runs {@code work} as a stage of the current operation.
+     */
+    public <T, E extends Throwable> T stage(Stage stage, Observation.CheckedCallable<T, E> work) throws E {
+        Observation operation = currentOperation();
+        Observation observation = Observation.createNotStarted(STAGE, observationRegistry)
+                .lowCardinalityKeyValue(OPERATION_TAG, operationTag(operation))
+                .lowCardinalityKeyValue(STAGE_TAG, stage.tag)
+                .lowCardinalityKeyValue(PAGES_TAG, UNKNOWN)
+                .lowCardinalityKeyValue(SIZE_TAG, UNKNOWN);
+        return observe(observation, operation, work);
+    }
+
+    public <E extends Throwable> void stage(Stage stage, Observation.CheckedRunnable<E> work) throws E {
+        stage(stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Wraps a task handed to another thread so that its stages count towards the current operation.
+     */
+    public <T> Callable<T> propagate(Callable<T> task) {
+        Observation current = observationRegistry.getCurrentObservation();
+        if (current == null) return task;
+        return () -> current.scopedChecked(task::call);
+    }
+
+    /**
+     * Records a document the loader opened, which also sets the buckets of the current operation.
+     */
+    public void documentOpened(int pages, long bytes) {
+        Observation operation = currentOperation();
+        String tag = operationTag(operation);
+        if (operation != null) {
+            operation.lowCardinalityKeyValue(PAGES_TAG, pagesBucket(pages));
+            operation.lowCardinalityKeyValue(SIZE_TAG, sizeBucket(bytes));
+        }
+        Counter.builder("pdf.bytes.read")
+                .tag(OPERATION_TAG, tag)
+                .baseUnit("bytes")
+                .description("Size of the PDF files opened")
+                .register(meterRegistry)
+                .increment(bytes);
+        DistributionSummary.builder("pdf.document.pages")
+                .tag(OPERATION_TAG, tag)
+                .description("Page count of the documents opened")
+                .register(meterRegistry)
+                .record(pages);
+        DistributionSummary.builder("pdf.document.size")
+                .tag(OPERATION_TAG, tag)
+                .baseUnit("bytes")
+                .description("File size of the documents opened")
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    public void bytesWritten(long bytes) {
+        writtenCounter(operationTag(currentOperation())).increment(bytes);
+    }
+
+    /**
+     * Counts what goes through {@code out} as written by the current operation.
+     */
+    public OutputStream countWritten(OutputStream out) {
+        Counter written = writtenCounter(operationTag(currentOperation()));
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                written.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                written.increment(len);
+            }
+        };
+    }
+
+    public void pageRendered(ImageFormat format, int imageBytes) {
+        String formatTag = format.name().toLowerCase();
+        Counter.builder("pdf.pages.rendered")
+                .tag(OPERATION_TAG, operationTag(currentOperation()))
+                .tag("format", formatTag)
+                .description("Pages rendered and encoded as images")
+                .register(meterRegistry)
+                .increment();
+        DistributionSummary.builder("pdf.page.image.size")
+                .tag("format", formatTag)
+                .baseUnit("bytes")
+                .description("Size of the encoded page images")
+                .register(meterRegistry)
+                .record(imageBytes);
+    }
+
+    private Counter writtenCounter(String operationTag) {
+        return Counter.builder("pdf.bytes.written")
+                .tag(OPERATION_TAG, operationTag)
+                .baseUnit("bytes")
+                .description("PDF bytes written")
+                .register(meterRegistry);
+    }
+
+    private <T, E extends Throwable> T observe(Observation observation, Observation operation,
+                                               Observation.CheckedCallable<T, E> work) throws E {
+        observation.start();
+        try {
+            return observation.scopedChecked(work);
+        } catch (Throwable e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            // The operation's buckets are only known once its document is loaded, maybe by this very stage
+            if (operation != null) {
+                observation.lowCardinalityKeyValue(operation.getContextView().getLowCardinalityKeyValue(PAGES_TAG));
+                observation.lowCardinalityKeyValue(operation.getContextView().getLowCardinalityKeyValue(SIZE_TAG));
+            }
+            observation.stop();
+        }
+    }
+
+    private Observation currentOperation() {
+        ObservationView current = observationRegistry.getCurrentObservation();
+        while (current != null) {
+            if (current instanceof Observation observation && OPERATION.equals(current.getContextView().getName())) {
+                return observation;
+            }
+            current = current.getContextView().getParentObservation();
+        }
+        return null;
+    }
+
+    private static String operationTag(Observation operation) {
+        return operation != null ? operation.getContextView().getLowCardinalityKeyValue(OPERATION_TAG).getValue() : NONE;
+    }
+
+    private static String pagesBucket(int pages) {
+        if (pages <= 1) return "1";
+        if (pages <= 10) return "2-10";
+        if (pages <= 50) return "11-50";
+        if (pages <= 200) return "51-200";
+        return "201+";
+    }
+
+    private static String sizeBucket(long bytes) {
+        if (bytes < 100 * 1024) return "0-100KB";
+        if (bytes < 1024 * 1024) return "100KB-1MB";
+        if (bytes < 10 * 1024 * 1024) return "1MB-10MB";
+        if (bytes < 100 * 1024 * 1024) return "10MB-100MB";
+        return "100MB+";
+    }
+}
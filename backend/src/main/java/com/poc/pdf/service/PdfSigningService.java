@@ -1,9 +1,12 @@
 package com.poc.pdf.service;
 
 import com.poc.pdf.entity.SignerRole;
-import org.apache.pdfbox.Loader;
+import com.poc.pdf.service.AdmissionService.Operation;
+import com.poc.pdf.service.PdfMetrics.Stage;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.ExternalSigningSupport;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
 import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
@@ -11,127 +14,149 @@ import org.apache.pdfbox.pdmodel.interactive.form.PDCheckBox;
 import org.apache.pdfbox.pdmodel.interactive.form.PDField;
 import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
 import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
-import org.bouncycastle.cert.jcajce.JcaCertStore;
-import org.bouncycastle.cms.CMSProcessableByteArray;
-import org.bouncycastle.cms.CMSSignedData;
-import org.bouncycastle.cms.CMSSignedDataGenerator;
-import org.bouncycastle.cms.CMSTypedData;
-import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
-import org.bouncycastle.operator.ContentSigner;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
-import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.springframework.stereotype.Service;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.KeyStore;
-import java.security.PrivateKey;
-import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
 import java.util.*;
 
 @Service
 public class PdfSigningService {
 
-    private final CertificateService certificateService;
+    private final Map<SignerRole, SigningContext> signingContexts = new EnumMap<>(SignerRole.class);
+    private final PdfDocumentLoader documentLoader;
+    private final PdfMetrics metrics;
 
-    public PdfSigningService(CertificateService certificateService) {
-        this.certificateService = certificateService;
+    public PdfSigningService(CertificateService certificateService, PdfDocumentLoader documentLoader, PdfMetrics metrics)
+            throws GeneralSecurityException, OperatorCreationException {
+        // Everything a signature needs besides the document is fixed per signer, so it is built once
+        for (SignerRole role : SignerRole.values()) {
+            signingContexts.put(role, new SigningContext(certificateService.getSignerEntry(role)));
+        }
+        this.documentLoader = documentLoader;
+        this.metrics = metrics;
     }
 
-    public void signForSigner(Path pdfPath, SignerRole role, Map<String, String> fieldValues, Set<String> fieldsToLock) throws Exception {
-        KeyStore.PrivateKeyEntry entry = certificateService.getSignerEntry(role);
-        PrivateKey privateKey = entry.getPrivateKey();
-        Certificate[] chain = entry.getCertificateChain();
-        X509Certificate cert = (X509Certificate) chain[0];
+    /**
+     * Fills, locks and signs the signer's fields in an incremental update.
+     *
+     * @return zero-based indexes of the pages whose appearance changed: those holding a filled field
+     *         or the signer's signature widget
+     */
+    public Set<Integer> signForSigner(Path pdfPath, SignerRole role, Map<String, String> fieldValues, Set<String> fieldsToLock) throws Exception {
+        return metrics.operation(Operation.SIGN, () -> sign(pdfPath, role, fieldValues, fieldsToLock));
+    }
 
-        File pdfFile = pdfPath.toFile();
+    private Set<Integer> sign(Path pdfPath, SignerRole role, Map<String, String> fieldValues, Set<String> fieldsToLock) throws Exception {
+        SigningContext signingContext = signingContexts.get(role);
+        Set<Integer> dirtyPages = new TreeSet<>();
+
+        // The signed revision is written next to the file, which the open document is still reading from
+        Path signedPath = Files.createTempFile(pdfPath.getParent(), "signing-", ".pdf");
+        boolean moved = false;
+        try {
+            try (PDDocument document = documentLoader.load(pdfPath)) {
+                PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
+                if (acroForm == null) {
+                    throw new IllegalStateException("PDF has no AcroForm");
+                }
 
-        try (PDDocument document = Loader.loadPDF(pdfFile)) {
-            PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
-            if (acroForm == null) {
-                throw new IllegalStateException("PDF has no AcroForm");
-            }
+                metrics.stage(Stage.ACROFORM, () -> {
+                    // Fill in field values for this signer
+                    for (Map.Entry<String, String> fv : fieldValues.entrySet()) {
+                        PDField field = acroForm.getField(fv.getKey());
+                        if (fill(field, fv.getValue())) {
+                            collectPages(document, field, dirtyPages);
+                        }
+                    }
 
-            // Fill in field values for this signer
-            for (Map.Entry<String, String> fv : fieldValues.entrySet()) {
-                PDField field = acroForm.getField(fv.getKey());
-                if (field instanceof PDTextField tf) {
-                    tf.setValue(fv.getValue());
-                } else if (field instanceof PDCheckBox cb) {
-                    if ("true".equals(fv.getValue())) {
-                        cb.check();
-                    } else {
-                        cb.unCheck();
+                    // Set signer's fields as read-only so they can't be modified after signing
+                    for (String fieldName : fieldsToLock) {
+                        PDField field = acroForm.getField(fieldName);
+                        if (field != null) {
+                            field.setReadOnly(true);
+                        }
                     }
-                }
-            }
+                });
 
-            // Set signer's fields as read-only so they can't be modified after signing
-            for (String fieldName : fieldsToLock) {
-                PDField field = acroForm.getField(fieldName);
-                if (field != null) {
-                    field.setReadOnly(true);
+                // Find the signature field for this signer
+                String sigFieldName = role == SignerRole.SIGNER_A ? "SignatureA" : "SignatureB";
+                PDSignatureField sigField = (PDSignatureField) acroForm.getField(sigFieldName);
+                if (sigField == null) {
+                    throw new IllegalStateException("Signature field " + sigFieldName + " not found");
+                }
+                collectPages(document, sigField, dirtyPages);
+
+                // Create PDF signature
+                PDSignature signature = new PDSignature();
+                signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+                signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+                signature.setName(role == SignerRole.SIGNER_A ? "Signataire A" : "Signataire B");
+                signature.setReason("Signature du document");
+                signature.setSignDate(Calendar.getInstance());
+
+                SignatureOptions options = new SignatureOptions();
+                options.setPreferredSignatureSize(16384); // 16 KB
+
+                document.addSignature(signature, options);
+                if (role == SignerRole.SIGNER_A) {
+                    // Certification signature with DocMDP P=2 (form fill + sign allowed)
+                    setDocMDPPermission(document, signature, 2);
                 }
-            }
 
-            // Find the signature field for this signer
-            String sigFieldName = role == SignerRole.SIGNER_A ? "SignatureA" : "SignatureB";
-            PDSignatureField sigField = (PDSignatureField) acroForm.getField(sigFieldName);
-            if (sigField == null) {
-                throw new IllegalStateException("Signature field " + sigFieldName + " not found");
+                // Save incrementally to preserve previous signatures; the signed byte range is digested as it streams
+                try (OutputStream out = metrics.countWritten(Files.newOutputStream(signedPath))) {
+                    ExternalSigningSupport externalSigning =
+                            metrics.stage(Stage.SAVE, () -> document.saveIncrementalForExternalSigning(out));
+                    byte[] cms = metrics.stage(Stage.CMS_SIGN, () -> signingContext.sign(externalSigning.getContent()));
+                    metrics.stage(Stage.SAVE, () -> externalSigning.setSignature(cms));
+                }
             }
+            Files.move(signedPath, pdfPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            // Whatever went wrong, even an Error, the half-written revision must not stay behind
+            if (!moved) Files.deleteIfExists(signedPath);
+        }
+        return dirtyPages;
+    }
 
-            // Create PDF signature
-            PDSignature signature = new PDSignature();
-            signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
-            signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
-            signature.setName(role == SignerRole.SIGNER_A ? "Signataire A" : "Signataire B");
-            signature.setReason("Signature du document");
-            signature.setSignDate(Calendar.getInstance());
-
-            SignatureOptions options = new SignatureOptions();
-            options.setPreferredSignatureSize(16384); // 16 KB
-
-            if (role == SignerRole.SIGNER_A) {
-                // Certification signature with DocMDP P=2 (form fill + sign allowed)
-                document.addSignature(signature, this.createSignatureInterface(privateKey, cert, chain), options);
-                setDocMDPPermission(document, signature, 2);
+    /**
+     * Sets a text field, or checks a checkbox for {@code "true"}; other kinds of fields are left alone.
+     *
+     * @return whether the field was filled
+     */
+    static boolean fill(PDField field, String value) throws IOException {
+        if (field instanceof PDTextField tf) {
+            tf.setValue(value);
+            return true;
+        }
+        if (field instanceof PDCheckBox cb) {
+            if ("true".equals(value)) {
+                cb.check();
             } else {
-                // Approval signature
-                document.addSignature(signature, this.createSignatureInterface(privateKey, cert, chain), options);
-            }
-
-            // Save incrementally to preserve previous signatures
-            try (FileOutputStream fos = new FileOutputStream(pdfFile)) {
-                document.saveIncremental(fos);
+                cb.unCheck();
             }
+            return true;
         }
+        return false;
     }
 
-    private org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureInterface createSignatureInterface(
-            PrivateKey privateKey, X509Certificate cert, Certificate[] chain) {
-        return content -> {
-            try {
-                CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
-                ContentSigner sha256Signer = new JcaContentSignerBuilder("SHA256withRSA")
-                        .setProvider("BC")
-                        .build(privateKey);
-                gen.addSignerInfoGenerator(
-                        new JcaSignerInfoGeneratorBuilder(
-                                new JcaDigestCalculatorProviderBuilder().setProvider("BC").build()
-                        ).build(sha256Signer, cert)
-                );
-                gen.addCertificates(new JcaCertStore(Arrays.asList(chain)));
-
-                byte[] data = content.readAllBytes();
-                CMSTypedData cmsData = new CMSProcessableByteArray(data);
-                CMSSignedData signedData = gen.generate(cmsData, false);
-                return signedData.getEncoded();
-            } catch (Exception e) {
-                throw new IOException("Error signing PDF", e);
+    private void collectPages(PDDocument document, PDField field, Set<Integer> pages) {
+        for (PDAnnotationWidget widget : field.getWidgets()) {
+            int index = widget.getPage() != null ? document.getPages().indexOf(widget.getPage()) : -1;
+            if (index < 0) {
+                // Widget not linked to its page: assume anything may have changed
+                for (int i = 0; i < document.getNumberOfPages(); i++) pages.add(i);
+                return;
             }
-        };
+            pages.add(index);
+        }
     }
 
     private void setDocMDPPermission(PDDocument document, PDSignature signature, int accessPermissions) {
@@ -0,0 +1,197 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.model.AddFieldsRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prepared workflow PDFs, keyed by the hash of the uploaded document and its field layout.
+ * Creating a workflow from a known template copies the prepared file instead of preparing
+ * the document again. Templates unused for longer than the TTL are dropped, and the least
+ * recently used ones go first once the stored files exceed the disk quota.
+ */
+@Service
+public class PreparedTemplateCache {
+
+    private static final class Template {
+        private final Path path;
+        private final long size;
+        private volatile Instant lastAccess = Instant.now();
+
+        private Template(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private final Path templateDir;
+    private final Duration ttl;
+    private final long maxDiskBytes;
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    public PreparedTemplateCache(
+            @Value("${app.pdf.storage-dir}") String storageDirPath,
+            @Value("${app.pdf.templates.ttl}") Duration ttl,
+            @Value("${app.pdf.templates.max-disk-size}") DataSize maxDiskSize) {
+        this.templateDir = Path.of(storageDirPath, "templates");
+        this.ttl = ttl;
+        this.maxDiskBytes = maxDiskSize.toBytes();
+    }
+
+    /**
+     * Identifies a template: the document hash plus the fields in a canonical order.
+     * Field values are left out, they are not written during preparation.
+     */
+    public String keyOf(String documentSha256, List<AddFieldsRequest> fields) {
+        StringBuilder canonical = new StringBuilder(documentSha256);
+        fields.stream()
+                .sorted(Comparator.comparingInt(AddFieldsRequest::page).thenComparing(AddFieldsRequest::name))
+                .forEach(f -> canonical.append('\n')
+                        .append(f.name()).append('|').append(f.type()).append('|').append(f.assignedTo()).append('|')
+                        .append(f.page()).append('|').append(f.x()).append('|').append(f.y()).append('|')
+                        .append(f.width()).append('|').append(f.height()));
+        return HexFormat.of().formatHex(sha256().digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Puts a copy of the prepared template at {@code target}, returning false if there is none.
+     */
+    public boolean copyTo(String key, Path target) throws IOException {
+        Template template = templates.get(key);
+        if (template == null) return false;
+        if (isExpired(template, Instant.now())) {
+            remove(key);
+            return false;
+        }
+        try {
+            link(template.path, target);
+        } catch (NoSuchFileException e) {
+            // Evicted in the meantime
+            return false;
+        }
+        template.lastAccess = Instant.now();
+        return true;
+    }
+
+    /**
+     * Keeps a copy of a freshly prepared document under the given key.
+     */
+    public void store(String key, Path prepared) throws IOException {
+        if (templates.containsKey(key)) return;
+        Files.createDirectories(templateDir);
+        Path path = templateDir.resolve("template-" + key + ".pdf");
+        Path staging = Files.createTempFile(templateDir, "staging-", ".pdf");
+        try {
+            Files.copy(prepared, staging, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(staging, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(staging);
+        }
+        templates.put(key, new Template(path, Files.size(path)));
+        enforceQuota();
+    }
+
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        templates.forEach((key, template) -> {
+            if (isExpired(template, now)) remove(key);
+        });
+    }
+
+    @PostConstruct
+    @PreDestroy
+    public void deleteStoredTemplates() throws IOException {
+        // The index only lives in memory, so files left by a previous run are orphans
+        templates.keySet().forEach(this::remove);
+        if (!Files.isDirectory(templateDir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(templateDir, "*.pdf")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private synchronized void enforceQuota() {
+        long total = templates.values().stream().mapToLong(t -> t.size).sum();
+        if (total <= maxDiskBytes) return;
+
+        var oldestFirst = templates.entrySet().stream()
+                .sorted(Comparator.comparing(e -> e.getValue().lastAccess))
+                .toList();
+        for (var entry : oldestFirst) {
+            if (total <= maxDiskBytes) return;
+            total -= entry.getValue().size;
+            remove(entry.getKey());
+        }
+    }
+
+    /**
+     * Revisions are written to a new file and renamed into place, never modified in place,
+     * so a workflow can share the template's file until its first signature.
+     */
+    static void link(Path template, Path target) throws IOException {
+        Path link = target.resolveSibling("link-" + UUID.randomUUID() + ".pdf");
+        try {
+            Files.createLink(link, template);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // Hard links not supported here
+            Files.copy(template, target, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        try {
+            Files.move(link, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(link);
+        }
+    }
+
+    private boolean isExpired(Template template, Instant now) {
+        return template.lastAccess.plus(ttl).isBefore(now);
+    }
+
+    private void remove(String key) {
+        Template template = templates.remove(key);
+        if (template == null) return;
+        try {
+            Files.deleteIfExists(template.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.poc.pdf.service;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.CMSTypedData;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.Store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+/**
+ * The parts of a CMS signature that only depend on the signer: key, certificate store, digest
+ * provider and signer-info builder. Built once per signer and shared by concurrent signatures;
+ * only the stateful content signer and generator are created per signature.
+ */
+final class SigningContext {
+
+    private final PrivateKey privateKey;
+    private final X509CertificateHolder certificate;
+    private final Store<X509CertificateHolder> certificates;
+    private final JcaContentSignerBuilder contentSignerBuilder;
+    private final JcaSignerInfoGeneratorBuilder signerInfoBuilder;
+
+    SigningContext(KeyStore.PrivateKeyEntry entry) throws GeneralSecurityException, OperatorCreationException {
+        this.privateKey = entry.getPrivateKey();
+        this.certificate = new JcaX509CertificateHolder((X509Certificate) entry.getCertificateChain()[0]);
+        // JcaCertStore extends the raw CollectionStore, though it only ever holds X509CertificateHolders
+        @SuppressWarnings("unchecked")
+        Store<X509CertificateHolder> chain = new JcaCertStore(Arrays.asList(entry.getCertificateChain()));
+        this.certificates = chain;
+        this.contentSignerBuilder = new JcaContentSignerBuilder("SHA256withRSA").setProvider("BC");
+        this.signerInfoBuilder = new JcaSignerInfoGeneratorBuilder(
+                new JcaDigestCalculatorProviderBuilder().setProvider("BC").build());
+    }
+
+    /**
+     * Returns a detached CMS signature over {@code content}, which is digested as it is read.
+     */
+    byte[] sign(InputStream content) throws IOException {
+        try {
+            CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+            generator.addSignerInfoGenerator(signerInfoBuilder.build(contentSignerBuilder.build(privateKey), certificate));
+            generator.addCertificates(certificates);
+            return generator.generate(new StreamedContent(content), false).getEncoded();
+        } catch (OperatorCreationException | CMSException e) {
+            throw new IOException("Error signing PDF", e);
+        }
+    }
+
+    /**
+     * Signed content that is streamed through the digest calculators instead of being held in memory.
+     */
+    private record StreamedContent(InputStream content) implements CMSTypedData {
+
+        @Override
+        public ASN1ObjectIdentifier getContentType() {
+            return CMSObjectIdentifiers.data;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            content.transferTo(out);
+        }
+
+        @Override
+        public Object getContent() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.poc.pdf.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Copies uploaded PDFs into the storage directory as a stream, hashing them on the way,
+ * so that an upload never has to be held in memory. Callers own the stored file: they
+ * either move it to its final place or delete it once done.
+ */
+@Service
+public class UploadStorageService {
+
+    public record StoredUpload(Path path, long size, String sha256) {}
+
+    private final Path uploadDir;
+
+    public UploadStorageService(@Value("${app.pdf.storage-dir}") String storageDirPath) {
+        this.uploadDir = Path.of(storageDirPath, "uploads");
+    }
+
+    @PostConstruct
+    public void deleteLeftovers() throws IOException {
+        // Uploads are only kept for the duration of a request
+        if (!Files.isDirectory(uploadDir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadDir, "upload-*.pdf")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public StoredUpload store(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return store(in, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Stores the rest of {@code in}, which is left open, such as one entry of an archive.
+     *
+     * @throws IllegalArgumentException if more than {@code maxSize} bytes come in
+     */
+    public StoredUpload store(InputStream in, long maxSize) throws IOException {
+        Files.createDirectories(uploadDir);
+        Path target = Files.createTempFile(uploadDir, "upload-", ".pdf");
+        MessageDigest digest = sha256();
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(target), digest)) {
+            byte[] buffer = new byte[8192];
+            long size = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (size > maxSize) {
+                    throw new IllegalArgumentException("Upload larger than " + maxSize + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+            return new StoredUpload(target, size, HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
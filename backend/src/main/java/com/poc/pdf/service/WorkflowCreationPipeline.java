@@ -0,0 +1,99 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.entity.SignatureWorkflow;
+import com.poc.pdf.entity.WorkflowStatus;
+import com.poc.pdf.model.AddFieldsRequest;
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.model.WorkflowResponse;
+import com.poc.pdf.service.UploadStorageService.StoredUpload;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates workflows in the background. The request only stores the workflow as PREPARING;
+ * preparation and then pre-rendering of its pages run as two stages on bounded executors.
+ * A full preparation queue rejects new workflows, while a full pre-render queue only skips
+ * the warm-up, since pages are rendered on demand anyway.
+ */
+@Service
+public class WorkflowCreationPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkflowCreationPipeline.class);
+
+    private final WorkflowService workflowService;
+    private final PreparedTemplateCache templateCache;
+    private final ThreadPoolExecutor prepareExecutor;
+    private final ThreadPoolExecutor preRenderExecutor;
+
+    public WorkflowCreationPipeline(
+            WorkflowService workflowService,
+            PreparedTemplateCache templateCache,
+            @Value("${app.pdf.create.parallelism}") int parallelism,
+            @Value("${app.pdf.create.queue-capacity}") int queueCapacity) {
+        this.workflowService = workflowService;
+        this.templateCache = templateCache;
+        int threads = Math.max(1, parallelism);
+        this.prepareExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new CustomizableThreadFactory("pdf-prepare-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        // Rendering fans out over the shared render pool, one document at a time is enough here
+        this.preRenderExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new CustomizableThreadFactory("pdf-prerender-"),
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prepareExecutor.shutdownNow();
+        preRenderExecutor.shutdownNow();
+    }
+
+    /**
+     * Registers the workflow and queues its preparation, after which its pages are rendered with
+     * {@code options}. The workflow stays PREPARING until it is ready for Signer A, or turns FAILED.
+     *
+     * @throws OverloadedException if too many workflows are already waiting to be prepared
+     */
+    public WorkflowResponse submit(StoredUpload upload, String fileName, List<AddFieldsRequest> fields,
+                                   RenderOptions options) throws IOException {
+        String templateKey = templateCache.keyOf(upload.sha256(), fields);
+        SignatureWorkflow workflow = workflowService.register(upload, fileName, fields, WorkflowStatus.PREPARING);
+        Long id = workflow.getId();
+        try {
+            prepareExecutor.execute(() -> prepare(id, templateKey, options));
+        } catch (RejectedExecutionException e) {
+            workflowService.discard(id);
+            throw new OverloadedException("Too many workflows are being prepared, try again later", Duration.ofSeconds(1));
+        }
+        return workflowService.getWorkflow(id, false, options);
+    }
+
+    private void prepare(Long id, String templateKey, RenderOptions options) {
+        try {
+            workflowService.prepare(id, templateKey);
+        } catch (Exception e) {
+            log.warn("Preparing workflow {} failed", id, e);
+            workflowService.markFailed(id);
+            return;
+        }
+        preRenderExecutor.execute(() -> {
+            try {
+                workflowService.preRender(id, options);
+            } catch (Exception e) {
+                log.warn("Pre-rendering workflow {} failed", id, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,203 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.model.WorkflowEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pushes workflow changes to server-sent event subscribers. A subscription is an async response held
+ * open by the container, not a thread, so idle subscribers cost little more than their socket.
+ * Each subscriber has its own queue, drained by a virtual thread only while it holds something, so a
+ * slow client delays its own stream and no other. A scheduler queues a periodic comment so that
+ * proxies keep idle streams open and departed clients are noticed; it never sends anything itself.
+ */
+@Service
+public class WorkflowEventBus {
+
+    private static final String EVENT_NAME = "workflow";
+    // Messages a subscriber may have waiting before it is considered stuck and dropped
+    private static final int MAX_PENDING = 64;
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final long timeoutMillis;
+    private final ScheduledThreadPoolExecutor heartbeats;
+    private final ExecutorService senders;
+
+    public WorkflowEventBus(
+            MeterRegistry meterRegistry,
+            @Value("${app.pdf.events.timeout}") Duration timeout,
+            @Value("${app.pdf.events.heartbeat}") Duration heartbeat) {
+        this.timeoutMillis = timeout.toMillis();
+        this.senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("pdf-events-", 0).factory());
+        this.heartbeats = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("pdf-events-heartbeat-"));
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+
+        Gauge.builder("pdf.events.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open workflow event streams")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        senders.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+    /**
+     * Opens a stream of the events of one workflow. Its first event is the state returned by {@code current},
+     * read on the calling thread once the subscription is in place, so no later change is missed. Events are
+     * ordered by workflow version: one older than what the stream already sent is dropped, so a change
+     * published while the state was being read never ends up behind it.
+     */
+    public SseEmitter subscribe(Long workflowId, Supplier<WorkflowEvent> current) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(workflowId, emitter);
+        subscribers.computeIfAbsent(workflowId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscriberCount.incrementAndGet();
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> emitter.complete());
+
+        WorkflowEvent snapshot;
+        try {
+            snapshot = current.get();
+        } catch (RuntimeException e) {
+            unsubscribe(subscriber);
+            throw e;
+        }
+        subscriber.offer(snapshot);
+        return emitter;
+    }
+
+    /**
+     * Queues a change for the workflow's subscribers, once the transaction that made it has committed.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void publish(WorkflowEvent event) {
+        Set<Subscriber> set = subscribers.get(event.workflowId());
+        if (set == null) return;
+        set.forEach(subscriber -> subscriber.offer(event));
+    }
+
+    private void heartbeat() {
+        subscribers.values().forEach(set -> set.forEach(Subscriber::heartbeat));
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.workflowId, (id, set) -> {
+            if (set.remove(subscriber)) subscriberCount.decrementAndGet();
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * One open stream. Messages are sent one at a time, in the order they were queued; a null event is a heartbeat.
+     */
+    private final class Subscriber {
+        private final Long workflowId;
+        private final SseEmitter emitter;
+        private final Queue<Message> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+        // Version of the last state sent; only touched by the draining thread
+        private long sentVersion = Long.MIN_VALUE;
+
+        private record Message(WorkflowEvent event) {}
+
+        private Subscriber(Long workflowId, SseEmitter emitter) {
+            this.workflowId = workflowId;
+            this.emitter = emitter;
+        }
+
+        private void offer(WorkflowEvent event) {
+            enqueue(new Message(event));
+        }
+
+        private void heartbeat() {
+            // Anything already queued keeps the stream alive just as well
+            if (pendingCount.get() == 0) enqueue(new Message(null));
+        }
+
+        private void enqueue(Message message) {
+            if (closed) return;
+            if (pendingCount.incrementAndGet() > MAX_PENDING) {
+                close(new IOException("Subscriber fell too far behind"));
+                return;
+            }
+            pending.add(message);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!draining.compareAndSet(false, true)) return;
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                draining.set(false);
+            }
+        }
+
+        private void drain() {
+            try {
+                for (Message message = pending.poll(); message != null && !closed; message = pending.poll()) {
+                    pendingCount.decrementAndGet();
+                    send(message.event());
+                }
+            } finally {
+                draining.set(false);
+            }
+            // A message queued after the last poll but before the flag was cleared
+            if (!pending.isEmpty() && !closed) schedule();
+        }
+
+        private void send(WorkflowEvent event) {
+            try {
+                if (event == null) {
+                    emitter.send(SseEmitter.event().comment(""));
+                    return;
+                }
+                long version = event.version() != null ? event.version() : Long.MIN_VALUE;
+                if (version < sentVersion) return;
+                emitter.send(SseEmitter.event().name(EVENT_NAME).data(event));
+                sentVersion = version;
+            } catch (IOException | IllegalStateException e) {
+                // The client is gone, or the stream already ended
+                close(e);
+            }
+        }
+
+        private synchronized void close(Exception e) {
+            if (closed) return;
+            closed = true;
+            pending.clear();
+            unsubscribe(this);
+            emitter.completeWithError(e);
+        }
+    }
+}
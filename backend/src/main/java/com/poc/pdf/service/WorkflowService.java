@@ -3,91 +3,192 @@ package com.poc.pdf.service;
 import com.poc.pdf.entity.*;
 import com.poc.pdf.model.*;
 import com.poc.pdf.repository.SignatureWorkflowRepository;
-import org.apache.pdfbox.Loader;
+import com.poc.pdf.service.AdmissionService.Operation;
+import com.poc.pdf.service.PdfMetrics.Stage;
+import com.poc.pdf.service.UploadStorageService.StoredUpload;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.PDFRenderer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class WorkflowService {
 
+    /**
+     * A revision of a workflow's PDF. Once the workflow has left PREPARING, signatures only append to the file,
+     * so the bytes of a revision stay a prefix of the current file; preparation still replaces it wholesale.
+     * The revision tag is the one {@link #getRevisionTag} gives for these very bytes.
+     */
+    public record PdfFile(Path path, long size, long lastModified, WorkflowStatus status, String revisionTag) {}
+
     private final SignatureWorkflowRepository repository;
     private final SignaturePreparationService preparationService;
     private final PdfSigningService signingService;
+    private final PageImageCache pageCache;
+    private final PageRenderingService renderingService;
+    private final PdfDocumentLoader documentLoader;
+    private final PreparedTemplateCache templateCache;
+    private final ContentHashCache contentHashes;
+    private final PdfMetrics metrics;
+    private final ApplicationEventPublisher events;
     private final Path storageDir;
+    private final Lock[] signingLocks;
 
     public WorkflowService(
             SignatureWorkflowRepository repository,
             SignaturePreparationService preparationService,
             PdfSigningService signingService,
-            @Value("${app.pdf.storage-dir}") String storageDirPath) {
+            PageImageCache pageCache,
+            PageRenderingService renderingService,
+            PdfDocumentLoader documentLoader,
+            PreparedTemplateCache templateCache,
+            ContentHashCache contentHashes,
+            PdfMetrics metrics,
+            ApplicationEventPublisher events,
+            @Value("${app.pdf.storage-dir}") String storageDirPath,
+            @Value("${app.pdf.workflow.lock-stripes}") int lockStripes) {
         this.repository = repository;
         this.preparationService = preparationService;
         this.signingService = signingService;
+        this.pageCache = pageCache;
+        this.renderingService = renderingService;
+        this.documentLoader = documentLoader;
+        this.templateCache = templateCache;
+        this.contentHashes = contentHashes;
+        this.metrics = metrics;
+        this.events = events;
         this.storageDir = Path.of(storageDirPath);
+        // Signatures of the same workflow are serialised, different workflows only share a stripe by chance
+        this.signingLocks = new Lock[Math.max(1, lockStripes)];
+        for (int i = 0; i < signingLocks.length; i++) {
+            signingLocks[i] = new ReentrantLock();
+        }
     }
 
-    public WorkflowResponse createWorkflow(byte[] pdfBytes, String fileName, List<AddFieldsRequest> fields) throws IOException {
+    public WorkflowResponse createWorkflow(StoredUpload upload, String fileName, List<AddFieldsRequest> fields, boolean includePages,
+                                           RenderOptions options) throws IOException {
+        SignatureWorkflow workflow = register(upload, fileName, fields, WorkflowStatus.CREATED);
+        workflow = prepare(workflow.getId(), templateCache.keyOf(upload.sha256(), fields));
+        return toResponse(workflow, includePages, options);
+    }
+
+    /**
+     * Stores a new workflow with its fields and moves the upload in as its PDF, which still has to be prepared.
+     */
+    SignatureWorkflow register(StoredUpload upload, String fileName, List<AddFieldsRequest> fields,
+                               WorkflowStatus status) throws IOException {
         // Ensure storage directory exists
         Files.createDirectories(storageDir);
 
-        // Save original PDF to disk
         SignatureWorkflow workflow = new SignatureWorkflow();
         workflow.setOriginalFileName(fileName);
-        workflow.setStatus(WorkflowStatus.CREATED);
+        workflow.setStatus(status);
         workflow = repository.save(workflow);
 
         Path pdfPath = storageDir.resolve("workflow-" + workflow.getId() + ".pdf");
-        Files.write(pdfPath, pdfBytes);
+        Files.move(upload.path(), pdfPath, StandardCopyOption.REPLACE_EXISTING);
         workflow.setPdfFilePath(pdfPath.toString());
 
         // Create workflow fields
         for (AddFieldsRequest req : fields) {
-            WorkflowField wf = new WorkflowField();
-            wf.setWorkflow(workflow);
-            wf.setFieldName(req.name());
-            wf.setFieldType(req.type());
-            wf.setAssignedTo(SignerRole.valueOf(req.assignedTo()));
-            wf.setX(req.x());
-            wf.setY(req.y());
-            wf.setWidth(req.width());
-            wf.setHeight(req.height());
-            wf.setPage(req.page());
-            wf.setPageHeight(req.pageHeight());
-            workflow.getFields().add(wf);
-        }
-
-        // Prepare the document (add AcroForm fields + signature fields)
-        preparationService.prepareDocument(pdfPath.toFile(), workflow.getFields());
+            workflow.getFields().add(toWorkflowField(workflow, req));
+        }
+        return repository.save(workflow);
+    }
+
+    /**
+     * Adds the AcroForm and signature fields to a registered workflow's PDF and hands it to Signer A.
+     */
+    SignatureWorkflow prepare(Long id, String templateKey) throws IOException {
+        SignatureWorkflow workflow = repository.findWithFieldsById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Workflow not found: " + id));
+        Path pdfPath = Path.of(workflow.getPdfFilePath());
+
+        // Start from a prepared copy if this document was already set up with the same fields
+        if (!templateCache.copyTo(templateKey, pdfPath)) {
+            preparationService.prepareDocument(pdfPath.toFile(), workflow.getFields());
+            templateCache.store(templateKey, pdfPath);
+        }
+        pageCache.invalidate(workflow.getId());
 
         // Transition to SIGNER_A_PENDING
         workflow.setStatus(WorkflowStatus.SIGNER_A_PENDING);
         workflow = repository.save(workflow);
-
-        return toResponse(workflow);
+        events.publishEvent(toEvent(workflow, false));
+        return workflow;
     }
 
-    public WorkflowResponse getWorkflow(Long id) throws IOException {
+    /**
+     * Renders all pages of a workflow into the page cache ahead of the first request for them.
+     */
+    void preRender(Long id, RenderOptions options) throws IOException {
         SignatureWorkflow workflow = repository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Workflow not found: " + id));
-        return toResponse(workflow);
+        renderPages(workflow, options);
     }
 
-    public WorkflowResponse signWorkflow(Long id, SignRequest request) throws Exception {
+    void markFailed(Long id) {
+        repository.findById(id).ifPresent(workflow -> {
+            workflow.setStatus(WorkflowStatus.FAILED);
+            events.publishEvent(toEvent(repository.save(workflow), false));
+        });
+    }
+
+    /**
+     * Removes a workflow that was registered but could not be queued for preparation.
+     */
+    void discard(Long id) throws IOException {
+        SignatureWorkflow workflow = repository.findById(id).orElse(null);
+        if (workflow == null) return;
+        repository.delete(workflow);
+        Files.deleteIfExists(Path.of(workflow.getPdfFilePath()));
+    }
+
+    public WorkflowResponse getWorkflow(Long id, boolean includePages, RenderOptions options) throws IOException {
         SignatureWorkflow workflow = repository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Workflow not found: " + id));
+        return toResponse(workflow, includePages, options);
+    }
+
+    public WorkflowResponse signWorkflow(Long id, SignRequest request, boolean includePages, RenderOptions options) throws Exception {
+        return toResponse(sign(id, request), includePages, options);
+    }
+
+    /**
+     * Signs a workflow for the requesting signer and advances its status, without rendering anything.
+     * Safe to call off the request thread: the fields are loaded with the workflow.
+     * Concurrent calls for the same workflow run one after the other, and a change made elsewhere
+     * in the meantime fails the final save with an optimistic locking error.
+     */
+    public SignatureWorkflow sign(Long id, SignRequest request) throws Exception {
+        Lock lock = signingLocks[Math.floorMod(id.hashCode(), signingLocks.length)];
+        lock.lock();
+        try {
+            return signLocked(id, request);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SignatureWorkflow signLocked(Long id, SignRequest request) throws Exception {
+        SignatureWorkflow workflow = repository.findWithFieldsById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Workflow not found: " + id));
 
         SignerRole role = SignerRole.valueOf(request.signerRole());
 
@@ -117,8 +218,10 @@ public class WorkflowService {
                 .map(WorkflowField::getFieldName)
                 .collect(java.util.stream.Collectors.toSet());
 
-        // Sign the PDF
-        signingService.signForSigner(pdfPath, role, request.fieldValues() != null ? request.fieldValues() : java.util.Map.of(), fieldsToLock);
+        // Sign the PDF, then keep the rendered pages the incremental update did not touch
+        PageImageCache.Revision unsigned = PageImageCache.Revision.of(pdfPath);
+        java.util.Set<Integer> dirtyPages = signingService.signForSigner(pdfPath, role, request.fieldValues() != null ? request.fieldValues() : java.util.Map.of(), fieldsToLock);
+        pageCache.carryForward(workflow.getId(), unsigned, PageImageCache.Revision.of(pdfPath), dirtyPages);
 
         // Transition state
         if (role == SignerRole.SIGNER_A) {
@@ -128,16 +231,116 @@ public class WorkflowService {
         }
 
         workflow = repository.save(workflow);
-        return toResponse(workflow);
+        events.publishEvent(toEvent(workflow, true));
+        return workflow;
+    }
+
+    /**
+     * Fails the way the other lookups do when the workflow does not exist, without loading it.
+     */
+    public void checkExists(Long id) {
+        if (!repository.existsById(id)) {
+            throw new IllegalArgumentException("Workflow not found: " + id);
+        }
+    }
+
+    /**
+     * The current state of a workflow, as its event subscribers see it.
+     */
+    public WorkflowEvent getEvent(Long id) {
+        SignatureWorkflow workflow = repository.findWithFieldsById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Workflow not found: " + id));
+        return toEvent(workflow, true);
     }
 
-    public byte[] downloadPdf(Long id) throws IOException {
+    /**
+     * Strong identifier of the workflow's current state, derived from its version, last update and status and
+     * from the SHA-256 of its PDF: every response about the workflow, its pages or its PDF changes along with it.
+     * Only the file is read, once per revision, so it is cheap enough to check before rendering anything.
+     */
+    public String getRevisionTag(Long id) throws IOException {
         SignatureWorkflow workflow = repository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Workflow not found: " + id));
-        return Files.readAllBytes(Path.of(workflow.getPdfFilePath()));
+        Path pdfPath = Path.of(workflow.getPdfFilePath());
+        String pdfHash = Files.exists(pdfPath) ? contentHashes.snapshot(id, pdfPath).sha256() : "";
+        return revisionTag(workflow, pdfHash);
     }
 
-    private WorkflowResponse toResponse(SignatureWorkflow workflow) throws IOException {
+    /**
+     * Locates the current PDF of a workflow so it can be sent straight from disk. Size, modification time and
+     * revision tag all describe the same revision of the file, which is only read if it has not been hashed yet.
+     * The status is read before the file, which preparation rewrites before leaving PREPARING.
+     */
+    public PdfFile getPdfFile(Long id) throws IOException {
+        SignatureWorkflow workflow = repository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Workflow not found: " + id));
+        Path pdfPath = Path.of(workflow.getPdfFilePath());
+        ContentHashCache.Snapshot snapshot = contentHashes.snapshot(id, pdfPath);
+        return new PdfFile(pdfPath, snapshot.revision().size(), snapshot.revision().lastModified(),
+                workflow.getStatus(), revisionTag(workflow, snapshot.sha256()));
+    }
+
+    /**
+     * Returns a page of the current revision if it has been rendered already, without touching the PDF.
+     */
+    public byte[] getCachedPage(Long id, int pageIndex, RenderOptions options) throws IOException {
+        SignatureWorkflow workflow = findPrepared(id);
+        return pageCache.getImage(id, PageImageCache.Revision.of(Path.of(workflow.getPdfFilePath())), pageIndex, options);
+    }
+
+    /**
+     * Renders a page of the current revision. Like {@link #getCachedPage}, refuses a workflow that is still PREPARING,
+     * whose PDF the pipeline is about to replace.
+     */
+    public byte[] renderPage(Long id, int pageIndex, RenderOptions options) throws IOException {
+        SignatureWorkflow workflow = findPrepared(id);
+        Path pdfPath = Path.of(workflow.getPdfFilePath());
+        PageImageCache.Revision revision = PageImageCache.Revision.of(pdfPath);
+
+        byte[] image = pageCache.getImage(id, revision, pageIndex, options);
+        if (image != null) return image;
+
+        return metrics.operation(Operation.RENDER, () -> {
+            try (PDDocument document = documentLoader.load(pdfPath)) {
+                if (pageIndex < 0 || pageIndex >= document.getNumberOfPages()) {
+                    throw new NotFoundException("Page not found: " + pageIndex);
+                }
+                pageCache.putPages(id, revision, renderingService.describePages(document));
+                byte[] rendered = renderingService.renderPage(document, pageIndex, options);
+                pageCache.putImage(id, revision, pageIndex, options, rendered);
+                return rendered;
+            }
+        });
+    }
+
+    private SignatureWorkflow findPrepared(Long id) {
+        SignatureWorkflow workflow = repository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Workflow not found: " + id));
+        if (workflow.getStatus() == WorkflowStatus.PREPARING) {
+            throw new ConflictException("The workflow is still being prepared");
+        }
+        return workflow;
+    }
+
+    /**
+     * The field a workflow holds for a requested field; values are filled in later, when it is signed.
+     */
+    public static WorkflowField toWorkflowField(SignatureWorkflow workflow, AddFieldsRequest req) {
+        WorkflowField wf = new WorkflowField();
+        wf.setWorkflow(workflow);
+        wf.setFieldName(req.name());
+        wf.setFieldType(req.type());
+        wf.setAssignedTo(SignerRole.valueOf(req.assignedTo()));
+        wf.setX(req.x());
+        wf.setY(req.y());
+        wf.setWidth(req.width());
+        wf.setHeight(req.height());
+        wf.setPage(req.page());
+        wf.setPageHeight(req.pageHeight());
+        return wf;
+    }
+
+    private WorkflowResponse toResponse(SignatureWorkflow workflow, boolean includePages, RenderOptions options) throws IOException {
         List<WorkflowFieldResponse> fieldResponses = workflow.getFields().stream()
                 .map(wf -> new WorkflowFieldResponse(
                         wf.getId(),
@@ -149,34 +352,103 @@ public class WorkflowService {
                 ))
                 .toList();
 
-        // Render PDF pages as PNG
-        List<String> pagesBase64 = renderPages(Path.of(workflow.getPdfFilePath()));
+        // The PDF is not final while it is being prepared
+        boolean preparing = workflow.getStatus() == WorkflowStatus.PREPARING;
+        List<PageInfo> pages = preparing ? List.of() : getPages(workflow);
+
+        // Render PDF pages as PNG, unless the client fetches them one by one
+        List<String> pagesBase64 = null;
+        if (includePages && !preparing) {
+            pagesBase64 = metrics.operation(Operation.RENDER, () -> {
+                List<byte[]> images = renderPages(workflow, options);
+                return metrics.stage(Stage.BASE64, () -> images.stream()
+                        .map(Base64.getEncoder()::encodeToString)
+                        .toList());
+            });
+        }
 
         return new WorkflowResponse(
                 workflow.getId(),
                 workflow.getOriginalFileName(),
                 workflow.getStatus().name(),
                 fieldResponses,
+                pages.size(),
+                pages,
                 pagesBase64,
                 workflow.getCreatedAt(),
                 workflow.getUpdatedAt()
         );
     }
 
-    private List<String> renderPages(Path pdfPath) throws IOException {
-        List<String> pages = new ArrayList<>();
-        File file = pdfPath.toFile();
-        if (!file.exists()) return pages;
+    private static WorkflowEvent toEvent(SignatureWorkflow workflow, boolean withFieldValues) {
+        Map<String, String> fieldValues = null;
+        if (withFieldValues) {
+            fieldValues = new LinkedHashMap<>();
+            for (WorkflowField field : workflow.getFields()) {
+                fieldValues.put(field.getFieldName(), field.getValue());
+            }
+        }
+        return new WorkflowEvent(workflow.getId(), workflow.getStatus().name(), fieldValues, workflow.getUpdatedAt(),
+                workflow.getVersion());
+    }
+
+    private List<PageInfo> getPages(SignatureWorkflow workflow) throws IOException {
+        Path pdfPath = Path.of(workflow.getPdfFilePath());
+        if (!Files.exists(pdfPath)) return List.of();
 
-        try (PDDocument document = Loader.loadPDF(file)) {
-            PDFRenderer renderer = new PDFRenderer(document);
-            for (int i = 0; i < document.getNumberOfPages(); i++) {
-                BufferedImage image = renderer.renderImageWithDPI(i, 150);
-                ByteArrayOutputStream imgOut = new ByteArrayOutputStream();
-                ImageIO.write(image, "png", imgOut);
-                pages.add(Base64.getEncoder().encodeToString(imgOut.toByteArray()));
+        PageImageCache.Revision revision = PageImageCache.Revision.of(pdfPath);
+        List<PageInfo> pages = pageCache.getPages(workflow.getId(), revision);
+        if (pages == null) {
+            try (PDDocument document = documentLoader.load(pdfPath)) {
+                pages = renderingService.describePages(document);
             }
+            pageCache.putPages(workflow.getId(), revision, pages);
+        }
+        return pages;
+    }
+
+    private List<byte[]> renderPages(SignatureWorkflow workflow, RenderOptions options) throws IOException {
+        Path pdfPath = Path.of(workflow.getPdfFilePath());
+        if (!Files.exists(pdfPath)) return List.of();
+
+        // Reuse previously rendered pages as long as the file has not been rewritten
+        PageImageCache.Revision revision = PageImageCache.Revision.of(pdfPath);
+        int pageCount = getPages(workflow).size();
+        List<byte[]> pages = new ArrayList<>(pageCount);
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            byte[] image = pageCache.getImage(workflow.getId(), revision, i, options);
+            pages.add(image);
+            if (image == null) missing.add(i);
+        }
+
+        if (!missing.isEmpty()) {
+            metrics.operation(Operation.RENDER, () -> {
+                try (PDDocument document = documentLoader.load(pdfPath)) {
+                    List<byte[]> rendered = renderingService.renderPages(
+                            document, () -> documentLoader.tryLoad(pdfPath), missing, options);
+                    for (int j = 0; j < missing.size(); j++) {
+                        int i = missing.get(j);
+                        pageCache.putImage(workflow.getId(), revision, i, options, rendered.get(j));
+                        pages.set(i, rendered.get(j));
+                    }
+                }
+                return null;
+            });
         }
         return pages;
     }
+
+    private static String revisionTag(SignatureWorkflow workflow, String pdfHash) {
+        String state = workflow.getVersion() + "|" + workflow.getUpdatedAt() + "|" + workflow.getStatus() + "|" + pdfHash;
+        return HexFormat.of().formatHex(sha256().digest(state.getBytes(StandardCharsets.UTF_8)), 0, 16);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
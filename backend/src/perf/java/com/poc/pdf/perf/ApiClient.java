@@ -0,0 +1,117 @@
+package com.poc.pdf.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Calls the REST API and records every call under its endpoint while recording is on.
+ * A call that gets no 2xx response counts as an error and fails with an {@link IOException}.
+ */
+final class ApiClient {
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ConcurrentMap<String, EndpointStats> stats = new ConcurrentHashMap<>();
+    private final ObjectMapper json;
+    private final URI baseUri;
+    private volatile boolean recording;
+
+    ApiClient(URI baseUri, ObjectMapper json) {
+        this.baseUri = baseUri;
+        this.json = json;
+    }
+
+    void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    JsonNode get(String endpoint, String path) throws IOException, InterruptedException {
+        return json.readTree(send(endpoint, request(path).GET().build()));
+    }
+
+    byte[] download(String endpoint, String path) throws IOException, InterruptedException {
+        return send(endpoint, request(path).GET().build());
+    }
+
+    JsonNode postJson(String endpoint, String path, Object body) throws IOException, InterruptedException {
+        HttpRequest request = request(path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json.writeValueAsBytes(body)))
+                .build();
+        return json.readTree(send(endpoint, request));
+    }
+
+    /**
+     * Posts a multipart form; {@code byte[]} parts are sent as PDF files, anything else as text.
+     */
+    JsonNode postMultipart(String endpoint, String path, Map<String, Object> parts) throws IOException, InterruptedException {
+        String boundary = "load-" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (Map.Entry<String, Object> part : parts.entrySet()) {
+            StringBuilder header = new StringBuilder("--").append(boundary).append("\r\n")
+                    .append("Content-Disposition: form-data; name=\"").append(part.getKey()).append('"');
+            if (part.getValue() instanceof byte[]) {
+                header.append("; filename=\"").append(part.getKey()).append(".pdf\"\r\nContent-Type: application/pdf");
+            }
+            body.writeBytes(header.append("\r\n\r\n").toString().getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(part.getValue() instanceof byte[] bytes
+                    ? bytes : part.getValue().toString().getBytes(StandardCharsets.UTF_8));
+            body.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        body.writeBytes(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpRequest request = request(path)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        return json.readTree(send(endpoint, request));
+    }
+
+    Map<String, EndpointStats.Report> report(double seconds) {
+        Map<String, EndpointStats.Report> reports = new TreeMap<>();
+        stats.forEach((endpoint, endpointStats) -> reports.put(endpoint, endpointStats.report(seconds)));
+        return reports;
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Accept", "application/json")
+                .timeout(Duration.ofMinutes(5));
+    }
+
+    private byte[] send(String endpoint, HttpRequest request) throws IOException, InterruptedException {
+        boolean recorded = recording;
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            if (recorded) record(endpoint, e.getClass().getSimpleName(), true, System.nanoTime() - start);
+            throw e;
+        }
+        boolean error = response.statusCode() / 100 != 2;
+        if (recorded) record(endpoint, String.valueOf(response.statusCode()), error, System.nanoTime() - start);
+        if (error) throw new IOException(endpoint + " returned " + response.statusCode());
+        return response.body();
+    }
+
+    private void record(String endpoint, String status, boolean error, long latencyNanos) {
+        stats.computeIfAbsent(endpoint, e -> new EndpointStats()).record(status, error, latencyNanos);
+    }
+}
@@ -0,0 +1,53 @@
+package com.poc.pdf.perf;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencies and response statuses of one endpoint. Every latency is kept, so percentiles are exact.
+ */
+final class EndpointStats {
+
+    record Latency(double p50, double p95, double p99, double max, double mean) {}
+
+    record Report(long requests, long errors, double errorRate, double throughput, Latency latencyMs,
+                  Map<String, Long> statuses) {}
+
+    private final Map<String, Long> statuses = new TreeMap<>();
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errors;
+
+    /**
+     * @param status the HTTP status, or a short description of why no response came back
+     */
+    synchronized void record(String status, boolean error, long latencyNanos) {
+        if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+        latencies[count++] = latencyNanos;
+        statuses.merge(status, 1L, Long::sum);
+        if (error) errors++;
+    }
+
+    synchronized Report report(double seconds) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        double mean = count == 0 ? 0 : millis(Arrays.stream(sorted).sum() / count);
+        Latency latency = new Latency(percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+                count == 0 ? 0 : millis(sorted[count - 1]), mean);
+        double errorRate = count == 0 ? 0 : Math.round(errors * 10_000.0 / count) / 10_000.0;
+        return new Report(count, errors, errorRate, Math.round(count / seconds * 100) / 100.0, latency,
+                new TreeMap<>(statuses));
+    }
+
+    // Nearest-rank percentile
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return millis(sorted[Math.max(0, rank - 1)]);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+}
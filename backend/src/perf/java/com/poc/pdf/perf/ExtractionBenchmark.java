@@ -0,0 +1,54 @@
+package com.poc.pdf.perf;
+
+import com.poc.pdf.model.ImageFormat;
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.model.RenderProfile;
+import com.poc.pdf.service.PdfFieldExtractorService.ExtractionData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Field extraction plus flattened page rendering of an uploaded form ({@code POST /api/pdf/extract}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"1", "10", "100", "500"})
+    int pages;
+
+    @Param({"5", "100", "2000"})
+    int fields;
+
+    @Param({"72", "150"})
+    float dpi;
+
+    private PipelineServices services;
+    private Path form;
+    private RenderOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new PipelineServices();
+        form = SyntheticPdfs.withFields(services.workDir.resolve("form.pdf"), pages,
+                SyntheticPdfs.fields(pages, fields), services.adder);
+        options = new RenderOptions(RenderProfile.SCREEN, dpi, null, ImageFormat.PNG, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.close();
+    }
+
+    @Benchmark
+    public ExtractionData extractAndFlatten() throws IOException {
+        return services.extractor.extractAndFlatten(form, options);
+    }
+}
@@ -0,0 +1,52 @@
+package com.poc.pdf.perf;
+
+import com.poc.pdf.service.PdfFieldExtractorService.ExtractionData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the fields and page layout of a form without rendering it. The time per operation should grow
+ * linearly with pages plus fields, including when widgets lack their page link and are placed through
+ * the pages' annotation lists ({@code pageLinks=false}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FieldExtractionBenchmark {
+
+    @Param({"10", "100", "400"})
+    int pages;
+
+    @Param({"100", "1000", "3000"})
+    int fields;
+
+    @Param({"true", "false"})
+    boolean pageLinks;
+
+    private PipelineServices services;
+    private Path form;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new PipelineServices();
+        form = SyntheticPdfs.withFields(services.workDir.resolve("form.pdf"), pages,
+                SyntheticPdfs.fields(pages, fields), services.adder);
+        if (!pageLinks) SyntheticPdfs.withoutPageLinks(form);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.close();
+    }
+
+    @Benchmark
+    public ExtractionData extractFieldsOnly() throws IOException {
+        return services.extractor.extractFieldsOnly(form);
+    }
+}
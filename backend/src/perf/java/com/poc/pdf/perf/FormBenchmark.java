@@ -0,0 +1,74 @@
+package com.poc.pdf.perf;
+
+import com.poc.pdf.entity.WorkflowField;
+import com.poc.pdf.model.AddFieldsRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing form fields into a document: the field editor's {@code addFields} and the workflow's
+ * {@code prepareDocument}, which also adds the signature fields and replaces the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormBenchmark {
+
+    @Param({"1", "10", "100", "500"})
+    int pages;
+
+    @Param({"5", "100", "2000"})
+    int fields;
+
+    private PipelineServices services;
+    private Path blank;
+    private List<AddFieldsRequest> requests;
+    private List<WorkflowField> workflowFields;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new PipelineServices();
+        blank = SyntheticPdfs.blank(services.workDir.resolve("blank.pdf"), pages);
+        requests = SyntheticPdfs.fields(pages, fields);
+        workflowFields = SyntheticPdfs.workflowFields(requests);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.close();
+    }
+
+    /**
+     * A fresh copy of the blank document for every call of the in-place preparation.
+     */
+    @State(Scope.Thread)
+    public static class WorkCopy {
+        Path file;
+
+        @Setup(Level.Invocation)
+        public void copy(FormBenchmark benchmark) throws IOException {
+            file = Files.copy(benchmark.blank, benchmark.services.workDir.resolve("work-" + Thread.currentThread().threadId() + ".pdf"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Benchmark
+    public void addFields() throws IOException {
+        services.adder.addFields(blank, requests, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void prepareDocument(WorkCopy copy) throws IOException {
+        services.preparation.prepareDocument(copy.file.toFile(), workflowFields);
+    }
+}
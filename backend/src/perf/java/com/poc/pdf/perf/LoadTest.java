@@ -0,0 +1,375 @@
+package com.poc.pdf.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.poc.pdf.entity.SignerRole;
+import com.poc.pdf.model.AddFieldsRequest;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Drives the REST API with an open workload: sessions arrive at a Poisson rate and run one scenario each,
+ * either a full workflow (create, get, sign A, get, sign B, download) or an extraction, over a weighted mix
+ * of synthetic documents. At most {@code concurrency} sessions run at once; arrivals beyond that are dropped
+ * and counted rather than delayed, so a saturated server shows up as drops instead of hiding its latency.
+ * After a warm-up, latency percentiles, throughput and errors are recorded per endpoint, the server's heap
+ * and GC activity over the same window is read from its actuator, and everything is written as a JSON report.
+ * With {@code start=true} the application is launched in a separate JVM for the run.
+ * Options are given as {@code name=value} arguments, see {@code DEFAULTS}.
+ */
+public final class LoadTest {
+
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("url", "http://localhost:8080"),
+            Map.entry("start", "false"),
+            Map.entry("port", "8081"),
+            Map.entry("server-jvm-args", "-Xmx1g"),
+            Map.entry("rate", "2"),
+            Map.entry("concurrency", "16"),
+            Map.entry("warmup", "15s"),
+            Map.entry("duration", "60s"),
+            Map.entry("mix", "workflow:3,extract:1"),
+            Map.entry("docs", "3x4:3,20x40:1"),
+            Map.entry("seed", "42"),
+            Map.entry("report", "target/perf/load-report.json"));
+
+    private static final String WORKFLOW = "/api/workflow";
+
+    record Document(String name, byte[] pdf, byte[] form, String fieldsJson,
+                    Map<String, String> signerAValues, Map<String, String> signerBValues) {}
+
+    record Sessions(long started, long completed, long failed, long dropped) {}
+
+    record ServerJvm(long gcPauses, double gcPauseSeconds, double allocatedBytes, double heapUsedMaxBytes,
+                     double heapUsedMeanBytes, double heapCommittedBytes) {}
+
+    record Report(Instant startedAt, Map<String, String> options, double measuredSeconds,
+                  Map<String, Sessions> sessions, Map<String, EndpointStats.Report> endpoints, ServerJvm server) {}
+
+    @FunctionalInterface
+    private interface Scenario {
+        void run(Document document) throws Exception;
+    }
+
+    private record Mix<T>(List<T> items, int[] cumulativeWeights) {
+        T pick(Random random) {
+            int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+            while (r >= cumulativeWeights[i]) i++;
+            return items.get(i);
+        }
+    }
+
+    private static final class SessionCounters {
+        final LongAdder started = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+    }
+
+    private final Map<String, String> options;
+    private final ObjectMapper json = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ApiClient client;
+    // Actuator reads, never recorded
+    private final ApiClient monitor;
+    private final Map<String, SessionCounters> counters = new ConcurrentHashMap<>();
+
+    private LoadTest(Map<String, String> options, URI baseUri) {
+        this.options = options;
+        this.client = new ApiClient(baseUri, json);
+        this.monitor = new ApiClient(baseUri, json);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        URI baseUri = URI.create(options.get("url"));
+        Process server = null;
+        Path serverStorage = null;
+        if (Boolean.parseBoolean(options.get("start"))) {
+            baseUri = URI.create("http://localhost:" + options.get("port"));
+            options.put("url", baseUri.toString());
+            serverStorage = Files.createTempDirectory("pdf-load-");
+            server = startServer(options, serverStorage);
+        }
+        try {
+            new LoadTest(options, baseUri).run(server);
+        } finally {
+            if (server != null) {
+                server.destroy();
+                server.waitFor(30, TimeUnit.SECONDS);
+                FileSystemUtils.deleteRecursively(serverStorage);
+            }
+        }
+    }
+
+    private void run(Process server) throws Exception {
+        Mix<Document> documents = parseMix(options.get("docs"), this::document);
+        Map<String, Scenario> scenarios = Map.of("workflow", this::workflowCycle, "extract", this::extract);
+        Mix<String> scenarioMix = parseMix(options.get("mix"), name -> {
+            if (!scenarios.containsKey(name)) throw new IllegalArgumentException("Unknown scenario: " + name);
+            return name;
+        });
+        awaitServer(server);
+
+        double rate = Double.parseDouble(options.get("rate"));
+        Semaphore inFlight = new Semaphore(Integer.parseInt(options.get("concurrency")));
+        Random random = new Random(Long.parseLong(options.get("seed")));
+        long warmupNanos = DurationStyle.detectAndParse(options.get("warmup")).toNanos();
+        long durationNanos = DurationStyle.detectAndParse(options.get("duration")).toNanos();
+
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long measureUntil = measureFrom + durationNanos;
+        Map<String, Double> before = null;
+        double[] heap = new double[3]; // max, sum, samples
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        long measuredNanos;
+
+        try (ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            long nextArrival = start;
+            while (true) {
+                long now = System.nanoTime();
+                if (before == null && now >= measureFrom) {
+                    before = serverJvm();
+                    client.setRecording(true);
+                    sampler.scheduleAtFixedRate(() -> sampleHeap(heap), 0, 500, TimeUnit.MILLISECONDS);
+                }
+                if (now >= measureUntil) break;
+                if (nextArrival > now) {
+                    LockSupport.parkNanos(Math.min(nextArrival, before == null ? measureFrom : measureUntil) - now);
+                    continue;
+                }
+                nextArrival += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+
+                String scenarioName = scenarioMix.pick(random);
+                Scenario scenario = scenarios.get(scenarioName);
+                Document document = documents.pick(random);
+                SessionCounters sessionCounters = before != null
+                        ? counters.computeIfAbsent(scenarioName, n -> new SessionCounters()) : null;
+                if (!inFlight.tryAcquire()) {
+                    if (sessionCounters != null) sessionCounters.dropped.increment();
+                    continue;
+                }
+                if (sessionCounters != null) sessionCounters.started.increment();
+                sessions.submit(() -> {
+                    try {
+                        scenario.run(document);
+                        if (sessionCounters != null) sessionCounters.completed.increment();
+                    } catch (Exception e) {
+                        if (sessionCounters != null) sessionCounters.failed.increment();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            client.setRecording(false);
+            measuredNanos = System.nanoTime() - measureFrom;
+            sampler.shutdownNow();
+            sampler.awaitTermination(5, TimeUnit.SECONDS);
+            System.out.println("Measurement done, waiting for " + (Integer.parseInt(options.get("concurrency"))
+                    - inFlight.availablePermits()) + " sessions in flight");
+        }
+
+        Map<String, Double> after = serverJvm();
+        double seconds = measuredNanos / 1e9;
+        Map<String, Sessions> sessionReport = new TreeMap<>();
+        counters.forEach((name, c) -> sessionReport.put(name,
+                new Sessions(c.started.sum(), c.completed.sum(), c.failed.sum(), c.dropped.sum())));
+        ServerJvm serverJvm = new ServerJvm(
+                Math.round(after.get("gcPauses") - before.get("gcPauses")),
+                after.get("gcPauseSeconds") - before.get("gcPauseSeconds"),
+                after.get("allocatedBytes") - before.get("allocatedBytes"),
+                heap[0],
+                heap[2] == 0 ? 0 : heap[1] / heap[2],
+                after.get("heapCommittedBytes"));
+        Report report = new Report(startedAt, new TreeMap<>(options), Math.round(seconds * 100) / 100.0,
+                sessionReport, client.report(seconds), serverJvm);
+
+        Path reportPath = Path.of(options.get("report"));
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        json.writerWithDefaultPrettyPrinter().writeValue(reportPath.toFile(), report);
+        printSummary(report);
+        System.out.println("Report written to " + reportPath.toAbsolutePath());
+    }
+
+    private void workflowCycle(Document document) throws Exception {
+        Map<String, Object> parts = new LinkedHashMap<>();
+        parts.put("file", document.pdf());
+        parts.put("fields", document.fieldsJson());
+        JsonNode created = client.postMultipart("POST /api/workflow", WORKFLOW + "?includePages=false", parts);
+        String workflow = WORKFLOW + "/" + created.get("id").asLong();
+
+        client.get("GET /api/workflow/{id}", workflow);
+        client.postJson("POST /api/workflow/{id}/sign", workflow + "/sign?includePages=false",
+                Map.of("signerRole", SignerRole.SIGNER_A.name(), "fieldValues", document.signerAValues()));
+        client.get("GET /api/workflow/{id}", workflow);
+        client.postJson("POST /api/workflow/{id}/sign", workflow + "/sign?includePages=false",
+                Map.of("signerRole", SignerRole.SIGNER_B.name(), "fieldValues", document.signerBValues()));
+        client.download("GET /api/workflow/{id}/download", workflow + "/download");
+    }
+
+    private void extract(Document document) throws Exception {
+        client.postMultipart("POST /api/pdf/extract", "/api/pdf/extract", Map.of("file", document.form()));
+    }
+
+    /**
+     * Builds the document described by {@code <pages>x<fields>}, both as a plain PDF with its field layout
+     * for workflows and as a filled-in form for extraction.
+     */
+    private Document document(String shape) {
+        String[] size = shape.split("x");
+        if (size.length != 2) throw new IllegalArgumentException("Document shape must be <pages>x<fields>: " + shape);
+        int pages = Integer.parseInt(size[0]);
+        List<AddFieldsRequest> fields = SyntheticPdfs.fields(pages, Integer.parseInt(size[1]));
+        try (PipelineServices services = new PipelineServices()) {
+            byte[] pdf = Files.readAllBytes(SyntheticPdfs.blank(services.workDir.resolve("blank.pdf"), pages));
+            byte[] form = Files.readAllBytes(SyntheticPdfs.withFields(services.workDir.resolve("form.pdf"), pages,
+                    fields, services.adder));
+            Map<String, String> signerA = new TreeMap<>();
+            Map<String, String> signerB = new TreeMap<>();
+            for (AddFieldsRequest field : fields) {
+                (SignerRole.SIGNER_A.name().equals(field.assignedTo()) ? signerA : signerB).put(field.name(), field.value());
+            }
+            return new Document(shape, pdf, form, json.writeValueAsString(fields), signerA, signerB);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not build document " + shape, e);
+        }
+    }
+
+    private void awaitServer(Process server) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofMinutes(2).toNanos();
+        while (true) {
+            try {
+                monitor.get("health", "/actuator/health");
+                return;
+            } catch (IOException e) {
+                if (server != null && !server.isAlive()) throw new IllegalStateException("Server exited during startup");
+                if (System.nanoTime() > deadline) throw new IllegalStateException("Server not reachable", e);
+                Thread.sleep(500);
+            }
+        }
+    }
+
+    private Map<String, Double> serverJvm() throws InterruptedException {
+        Map<String, Double> values = new TreeMap<>();
+        values.put("gcPauses", metric("jvm.gc.pause", "", "COUNT"));
+        values.put("gcPauseSeconds", metric("jvm.gc.pause", "", "TOTAL_TIME"));
+        values.put("allocatedBytes", metric("jvm.gc.memory.allocated", "", "COUNT"));
+        values.put("heapCommittedBytes", metric("jvm.memory.committed", "?tag=area:heap", "VALUE"));
+        return values;
+    }
+
+    private void sampleHeap(double[] heap) {
+        try {
+            double used = metric("jvm.memory.used", "?tag=area:heap", "VALUE");
+            synchronized (heap) {
+                heap[0] = Math.max(heap[0], used);
+                heap[1] += used;
+                heap[2]++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A meter the server has not registered yet, such as GC pauses before the first collection, reads as 0
+    private double metric(String name, String query, String statistic) throws InterruptedException {
+        try {
+            for (JsonNode measurement : monitor.get("metrics", "/actuator/metrics/" + name + query).path("measurements")) {
+                if (statistic.equals(measurement.path("statistic").asText())) return measurement.path("value").asDouble();
+            }
+        } catch (IOException e) {
+            // Not registered
+        }
+        return 0;
+    }
+
+    private static void printSummary(Report report) {
+        System.out.printf("%n%-34s %8s %9s %9s %9s %9s %8s%n", "endpoint", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "errors");
+        report.endpoints().forEach((endpoint, stats) -> System.out.printf("%-34s %8d %9.2f %9.1f %9.1f %9.1f %7.1f%%%n",
+                endpoint, stats.requests(), stats.throughput(), stats.latencyMs().p50(), stats.latencyMs().p95(),
+                stats.latencyMs().p99(), stats.errorRate() * 100));
+        report.sessions().forEach((scenario, s) -> System.out.printf("%s sessions: %d started, %d completed, %d failed, %d dropped%n",
+                scenario, s.started(), s.completed(), s.failed(), s.dropped()));
+        ServerJvm jvm = report.server();
+        System.out.printf("server: %d GC pauses (%.2f s), %.0f MB allocated, heap max %.0f MB / mean %.0f MB%n",
+                jvm.gcPauses(), jvm.gcPauseSeconds(), jvm.allocatedBytes() / 1e6, jvm.heapUsedMaxBytes() / 1e6,
+                jvm.heapUsedMeanBytes() / 1e6);
+    }
+
+    private static Process startServer(Map<String, String> options, Path storage) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String arg : options.get("server-jvm-args").trim().split("\\s+")) {
+            if (!arg.isEmpty()) command.add(arg);
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), "com.poc.pdf.PdfExtractionApplication",
+                "--server.port=" + options.get("port"), "--app.pdf.storage-dir=" + storage));
+
+        Path log = Path.of(options.get("report")).toAbsolutePath().resolveSibling("load-server.log");
+        Files.createDirectories(log.getParent());
+        System.out.println("Starting the server on port " + options.get("port") + ", log in " + log);
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new TreeMap<>(DEFAULTS);
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) throw new IllegalArgumentException("Options look like name=value: " + arg);
+            if (!DEFAULTS.containsKey(option[0])) {
+                throw new IllegalArgumentException("Unknown option " + option[0] + ", expected one of " + DEFAULTS.keySet());
+            }
+            options.put(option[0], option[1]);
+        }
+        return options;
+    }
+
+    /**
+     * Parses {@code item:weight,item:weight}; a missing weight counts as 1.
+     */
+    private static <T> Mix<T> parseMix(String spec, Function<String, T> item) {
+        List<T> items = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split(":");
+            items.add(item.apply(parts[0]));
+            weights.add(parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+        }
+        int[] cumulative = new int[weights.size()];
+        int total = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            total += Math.max(0, weights.get(i));
+            cumulative[i] = total;
+        }
+        if (total == 0) throw new IllegalArgumentException("Mix has no weight: " + spec);
+        return new Mix<>(items, cumulative);
+    }
+}
@@ -0,0 +1,62 @@
+package com.poc.pdf.perf;
+
+import com.poc.pdf.service.CertificateService;
+import com.poc.pdf.service.PageImageEncoder;
+import com.poc.pdf.service.PageRenderingService;
+import com.poc.pdf.service.PdfDocumentLoader;
+import com.poc.pdf.service.PdfFieldAdderService;
+import com.poc.pdf.service.PdfFieldExtractorService;
+import com.poc.pdf.service.PdfMetrics;
+import com.poc.pdf.service.PdfSigningService;
+import com.poc.pdf.service.SignaturePreparationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * The PDF services wired by hand with the defaults of application.properties, without a Spring context
+ * or database, over a scratch directory that is deleted on close.
+ */
+final class PipelineServices implements AutoCloseable {
+
+    final Path workDir;
+    final PdfDocumentLoader loader;
+    final PageRenderingService renderer;
+    final PdfFieldExtractorService extractor;
+    final PdfFieldAdderService adder;
+    final SignaturePreparationService preparation;
+    final PdfSigningService signing;
+
+    PipelineServices() throws Exception {
+        workDir = Files.createTempDirectory("pdf-perf-");
+        // Observations are recorded as in the application, so their overhead is part of the measurement
+        MeterRegistry meters = new SimpleMeterRegistry();
+        ObservationRegistry observations = ObservationRegistry.create();
+        observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+        PdfMetrics metrics = new PdfMetrics(observations, meters);
+
+        loader = new PdfDocumentLoader(workDir.toString(), DataSize.ofMegabytes(32), DataSize.ofMegabytes(512),
+                Duration.ofSeconds(30), meters, metrics);
+        renderer = new PageRenderingService(new PageImageEncoder(4, 0.8f), metrics, 4, 4);
+        extractor = new PdfFieldExtractorService(loader, renderer, metrics);
+        adder = new PdfFieldAdderService(loader, metrics);
+        preparation = new SignaturePreparationService(loader, metrics);
+        CertificateService certificates = new CertificateService();
+        certificates.init();
+        signing = new PdfSigningService(certificates, loader, metrics);
+    }
+
+    @Override
+    public void close() throws IOException {
+        renderer.shutdown();
+        FileSystemUtils.deleteRecursively(workDir);
+    }
+}
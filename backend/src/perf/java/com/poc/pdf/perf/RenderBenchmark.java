@@ -0,0 +1,55 @@
+package com.poc.pdf.perf;
+
+import com.poc.pdf.model.ImageFormat;
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.model.RenderProfile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering every page of an open document, as {@code WorkflowService} does when none of the pages is cached:
+ * the calling thread renders from its document while extra workers open their own copies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"1", "10", "100", "500"})
+    int pages;
+
+    @Param({"36", "72", "150", "300"})
+    float dpi;
+
+    private PipelineServices services;
+    private Path pdf;
+    private PDDocument document;
+    private RenderOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new PipelineServices();
+        pdf = SyntheticPdfs.blank(services.workDir.resolve("document.pdf"), pages);
+        document = services.loader.load(pdf);
+        options = new RenderOptions(RenderProfile.SCREEN, dpi, null, ImageFormat.PNG, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        document.close();
+        services.close();
+    }
+
+    @Benchmark
+    public List<byte[]> renderPages() throws IOException {
+        return services.renderer.renderPages(document, () -> services.loader.tryLoad(pdf), options);
+    }
+}
@@ -0,0 +1,78 @@
+package com.poc.pdf.perf;
+
+import com.poc.pdf.entity.SignerRole;
+import com.poc.pdf.entity.WorkflowField;
+import com.poc.pdf.model.AddFieldsRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Signer A filling in, locking and signing their fields of a prepared workflow document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+
+    @Param({"1", "10", "100", "500"})
+    int pages;
+
+    @Param({"5", "100", "2000"})
+    int fields;
+
+    private PipelineServices services;
+    private Path prepared;
+    private Map<String, String> values;
+    private Set<String> fieldsToLock;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new PipelineServices();
+        List<AddFieldsRequest> requests = SyntheticPdfs.fields(pages, fields);
+        List<WorkflowField> workflowFields = SyntheticPdfs.workflowFields(requests);
+        prepared = SyntheticPdfs.blank(services.workDir.resolve("prepared.pdf"), pages);
+        services.preparation.prepareDocument(prepared.toFile(), workflowFields);
+
+        List<AddFieldsRequest> signerFields = requests.stream()
+                .filter(req -> SignerRole.SIGNER_A.name().equals(req.assignedTo()))
+                .toList();
+        values = signerFields.stream().collect(Collectors.toMap(AddFieldsRequest::name, AddFieldsRequest::value));
+        fieldsToLock = values.keySet();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.close();
+    }
+
+    /**
+     * A fresh copy of the prepared document for every signature, since signing appends to the file.
+     */
+    @State(Scope.Thread)
+    public static class WorkCopy {
+        Path file;
+
+        @Setup(Level.Invocation)
+        public void copy(SigningBenchmark benchmark) throws IOException {
+            file = Files.copy(benchmark.prepared, benchmark.services.workDir.resolve("work-" + Thread.currentThread().threadId() + ".pdf"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Benchmark
+    public Set<Integer> signForSigner(WorkCopy copy) throws Exception {
+        return services.signing.signForSigner(copy.file, SignerRole.SIGNER_A, values, fieldsToLock);
+    }
+}
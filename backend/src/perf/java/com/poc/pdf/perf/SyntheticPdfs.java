@@ -0,0 +1,142 @@
+package com.poc.pdf.perf;
+
+import com.poc.pdf.entity.SignatureWorkflow;
+import com.poc.pdf.entity.SignerRole;
+import com.poc.pdf.entity.WorkflowField;
+import com.poc.pdf.model.AddFieldsRequest;
+import com.poc.pdf.model.PdfField.FieldType;
+import com.poc.pdf.service.PdfFieldAdderService;
+import com.poc.pdf.service.WorkflowService;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds benchmark documents of a given shape: Letter pages of contract-like text with a table
+ * and a filled block, and a layout of text fields and checkboxes spread over the pages.
+ */
+final class SyntheticPdfs {
+
+    private static final float PAGE_HEIGHT = PDRectangle.LETTER.getHeight();
+
+    private SyntheticPdfs() {
+    }
+
+    /**
+     * Writes a document of {@code pages} pages without any form.
+     */
+    static Path blank(Path file, int pages) throws IOException {
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage(PDRectangle.LETTER);
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 10);
+                    content.setLeading(13);
+                    content.newLineAtOffset(60, 730);
+                    content.showText("Page " + (p + 1) + " - Conditions generales");
+                    for (int line = 0; line < 30; line++) {
+                        content.newLine();
+                        content.showText("Article " + (line + 1) + " : le signataire reconnait avoir pris connaissance des presentes.");
+                    }
+                    content.endText();
+
+                    // A table and a filled block, so that rendering has some vector work to do
+                    content.setLineWidth(0.5f);
+                    for (int row = 0; row <= 8; row++) {
+                        content.moveTo(60, 300 - row * 20);
+                        content.lineTo(550, 300 - row * 20);
+                    }
+                    for (int col = 0; col <= 4; col++) {
+                        content.moveTo(60 + col * 122.5f, 300);
+                        content.lineTo(60 + col * 122.5f, 140);
+                    }
+                    content.stroke();
+                    content.setNonStrokingColor(0.85f, 0.2f, 0.2f);
+                    content.addRect(60, 60, 200, 60);
+                    content.fill();
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    /**
+     * Lays out {@code count} fields round-robin over the pages, every fifth one a checkbox,
+     * assigned alternately to Signer A and Signer B. Text fields carry a value.
+     */
+    static List<AddFieldsRequest> fields(int pages, int count) {
+        List<AddFieldsRequest> fields = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int slot = i / pages;
+            float x = 40 + (slot % 6) * 90;
+            float y = 40 + (slot / 6 % 60) * 11;
+            boolean checkbox = i % 5 == 4;
+            fields.add(new AddFieldsRequest(
+                    "field" + i,
+                    checkbox ? FieldType.CHECKBOX : FieldType.TEXT,
+                    x, y, checkbox ? 10 : 80, 10,
+                    i % pages,
+                    PAGE_HEIGHT,
+                    checkbox ? "true" : "Valeur " + i,
+                    i % 2 == 0 ? SignerRole.SIGNER_A.name() : SignerRole.SIGNER_B.name()));
+        }
+        return fields;
+    }
+
+    /**
+     * Writes a document with the given form fields, as produced by the field editor.
+     */
+    static Path withFields(Path file, int pages, List<AddFieldsRequest> fields, PdfFieldAdderService adder) throws IOException {
+        Path blank = blank(Files.createTempFile(file.getParent(), "blank-", ".pdf"), pages);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            adder.addFields(blank, fields, out);
+        } finally {
+            Files.delete(blank);
+        }
+        return file;
+    }
+
+    /**
+     * Removes the page link ({@code /P}) of every annotation, as some form editors leave them out,
+     * so that widgets can only be placed through the annotation lists of the pages.
+     */
+    static Path withoutPageLinks(Path file) throws IOException {
+        Path unlinked = Files.createTempFile(file.getParent(), "unlinked-", ".pdf");
+        try (PDDocument document = Loader.loadPDF(file.toFile())) {
+            for (PDPage page : document.getPages()) {
+                for (PDAnnotation annotation : page.getAnnotations()) {
+                    annotation.getCOSObject().removeItem(COSName.P);
+                }
+            }
+            document.save(unlinked.toFile());
+        }
+        Files.move(unlinked, file, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * The workflow fields a workflow created with this layout would hold.
+     */
+    static List<WorkflowField> workflowFields(List<AddFieldsRequest> fields) {
+        SignatureWorkflow workflow = new SignatureWorkflow();
+        return fields.stream().map(req -> WorkflowService.toWorkflowField(workflow, req)).toList();
+    }
+}
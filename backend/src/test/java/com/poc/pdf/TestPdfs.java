@@ -0,0 +1,42 @@
+package com.poc.pdf;
+
+import com.poc.pdf.model.AddFieldsRequest;
+import com.poc.pdf.model.PdfField.FieldType;
+import com.poc.pdf.service.UploadStorageService.StoredUpload;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Small documents and field layouts for tests.
+ */
+public final class TestPdfs {
+
+    public static final List<AddFieldsRequest> FIELDS = List.of(
+            new AddFieldsRequest("Nom", FieldType.TEXT, 72, 600, 200, 20, 0, 792, null, "SIGNER_A"),
+            new AddFieldsRequest("Ok", FieldType.CHECKBOX, 72, 550, 15, 15, 1, 792, null, "SIGNER_B"));
+
+    private TestPdfs() {}
+
+    /**
+     * Writes a blank letter-size document of the given page count, as an upload the services can take over.
+     */
+    public static StoredUpload upload(Path dir, int pages) throws IOException {
+        Files.createDirectories(dir);
+        Path path = Files.createTempFile(dir, "upload-", ".pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < pages; i++) {
+                document.addPage(new PDPage(PDRectangle.LETTER));
+            }
+            document.save(path.toFile());
+        }
+        // Unique per upload, so that no test picks up another one's prepared template
+        return new StoredUpload(path, Files.size(path), UUID.randomUUID().toString());
+    }
+}
@@ -0,0 +1,178 @@
+package com.poc.pdf.controller;
+
+import com.poc.pdf.TestPdfs;
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.model.SignRequest;
+import com.poc.pdf.service.WorkflowService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class WorkflowControllerTest {
+
+    @TempDir
+    static Path storageDir;
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        registry.add("app.pdf.storage-dir", storageDir::toString);
+    }
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private WorkflowService workflowService;
+
+    private Long id;
+    private byte[] pdf;
+
+    @BeforeEach
+    void createWorkflow() throws Exception {
+        id = workflowService.createWorkflow(TestPdfs.upload(storageDir.resolve("uploads"), 2), "doc.pdf",
+                TestPdfs.FIELDS, false, RenderOptions.DEFAULT).id();
+        pdf = Files.readAllBytes(workflowService.getPdfFile(id).path());
+    }
+
+    @Test
+    void downloadSendsTheWholeFileTaggedWithItsRevision() throws Exception {
+        mvc.perform(get("/api/workflow/{id}/download", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag()))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, pdf.length))
+                .andExpect(content().bytes(pdf));
+    }
+
+    @Test
+    void unchangedDownloadIsNotModified() throws Exception {
+        mvc.perform(get("/api/workflow/{id}/download", id).header(HttpHeaders.IF_NONE_MATCH, eTag()))
+                .andExpect(status().isNotModified());
+
+        MvcResult full = mvc.perform(get("/api/workflow/{id}/download", id)).andReturn();
+        mvc.perform(get("/api/workflow/{id}/download", id)
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, full.getResponse().getHeader(HttpHeaders.LAST_MODIFIED)))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void signedDownloadIsSentAgain() throws Exception {
+        String before = eTag();
+        workflowService.sign(id, new SignRequest("SIGNER_A", Map.of("Nom", "X")));
+
+        mvc.perform(get("/api/workflow/{id}/download", id).header(HttpHeaders.IF_NONE_MATCH, before))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag()));
+    }
+
+    @Test
+    void singleRangeIsPartial() throws Exception {
+        mvc.perform(get("/api/workflow/{id}/download", id).header(HttpHeaders.RANGE, "bytes=0-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-9/" + pdf.length))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(content().bytes(Arrays.copyOf(pdf, 10)));
+
+        mvc.perform(get("/api/workflow/{id}/download", id).header(HttpHeaders.RANGE, "bytes=-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(pdf, pdf.length - 5, pdf.length)));
+    }
+
+    @Test
+    void rangeIsHonouredOnlyForTheRevisionNamedByIfRange() throws Exception {
+        mvc.perform(get("/api/workflow/{id}/download", id)
+                        .header(HttpHeaders.RANGE, "bytes=0-9")
+                        .header(HttpHeaders.IF_RANGE, eTag()))
+                .andExpect(status().isPartialContent());
+
+        MvcResult full = mvc.perform(get("/api/workflow/{id}/download", id)).andReturn();
+        mvc.perform(get("/api/workflow/{id}/download", id)
+                        .header(HttpHeaders.RANGE, "bytes=0-9")
+                        .header(HttpHeaders.IF_RANGE, full.getResponse().getHeader(HttpHeaders.LAST_MODIFIED)))
+                .andExpect(status().isPartialContent());
+
+        mvc.perform(get("/api/workflow/{id}/download", id)
+                        .header(HttpHeaders.RANGE, "bytes=0-9")
+                        .header(HttpHeaders.IF_RANGE, "\"another-revision\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(pdf));
+
+        mvc.perform(get("/api/workflow/{id}/download", id)
+                        .header(HttpHeaders.RANGE, "bytes=0-9")
+                        .header(HttpHeaders.IF_RANGE, "Thu, 01 Jan 1970 00:00:00 GMT"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(pdf));
+    }
+
+    @Test
+    void severalOrMalformedRangesGetTheWholeFile() throws Exception {
+        mvc.perform(get("/api/workflow/{id}/download", id).header(HttpHeaders.RANGE, "bytes=0-9,20-29"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(pdf));
+
+        mvc.perform(get("/api/workflow/{id}/download", id).header(HttpHeaders.RANGE, "pages=1"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(pdf));
+    }
+
+    @Test
+    void rangePastTheEndIsNotSatisfiable() throws Exception {
+        mvc.perform(get("/api/workflow/{id}/download", id).header(HttpHeaders.RANGE, "bytes=" + pdf.length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + pdf.length));
+    }
+
+    @Test
+    void unchangedPageIsNotModified() throws Exception {
+        MvcResult page = mvc.perform(get("/api/workflow/{id}/pages/0", id).param("format", "PNG"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+                .andReturn();
+        String pageTag = page.getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/api/workflow/{id}/pages/0", id).param("format", "PNG")
+                        .header(HttpHeaders.IF_NONE_MATCH, pageTag))
+                .andExpect(status().isNotModified());
+
+        // Another encoding is another representation
+        mvc.perform(get("/api/workflow/{id}/pages/0", id).param("format", "JPEG")
+                        .header(HttpHeaders.IF_NONE_MATCH, pageTag))
+                .andExpect(status().isOk());
+
+        workflowService.sign(id, new SignRequest("SIGNER_A", Map.of("Nom", "X")));
+        mvc.perform(get("/api/workflow/{id}/pages/0", id).param("format", "PNG")
+                        .header(HttpHeaders.IF_NONE_MATCH, pageTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void pagePastTheEndIsNotFound() throws Exception {
+        mvc.perform(get("/api/workflow/{id}/pages/5", id))
+                .andExpect(status().isNotFound());
+    }
+
+    private String eTag() throws Exception {
+        return "\"" + workflowService.getRevisionTag(id) + "\"";
+    }
+}
@@ -0,0 +1,123 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.service.AdmissionService.Operation;
+import com.poc.pdf.service.AdmissionService.Permit;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionServiceTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final AdmissionService admission = new AdmissionService(2, 2, 2, 2, 4, Duration.ofSeconds(5), 2.0, registry);
+    private final ExecutorService waiters = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        waiters.shutdownNow();
+    }
+
+    @Test
+    void slowOperationWithoutQueueKeepsTheLimit() throws Exception {
+        warmUp();
+
+        admission.call(Operation.RENDER, () -> {
+            Thread.sleep(500);
+            return null;
+        });
+
+        assertThat(limit()).isEqualTo(2);
+    }
+
+    @Test
+    void timeSpentWritingToTheClientIsNotLatency() throws Exception {
+        warmUp();
+        Permit first = admission.acquire(Operation.RENDER);
+        Permit second = admission.acquire(Operation.RENDER);
+        Future<?> queued = queue();
+        Future<?> queuedAgain = queue();
+
+        // Both slots block on a slow client while requests queue behind them
+        slowClient(first);
+        first.close();
+        slowClient(second);
+        second.close();
+        queued.get();
+        queuedAgain.get();
+
+        assertThat(limit()).isEqualTo(2);
+    }
+
+    @Test
+    void sustainedQueueingShrinksTheLimit() throws Exception {
+        warmUp();
+        Permit first = admission.acquire(Operation.RENDER);
+        Permit second = admission.acquire(Operation.RENDER);
+        Future<?> queued = queue();
+        Future<?> queuedAgain = queue();
+
+        Thread.sleep(500);
+        first.close();
+        second.close();
+        queued.get();
+        queuedAgain.get();
+
+        assertThat(limit()).isEqualTo(1);
+    }
+
+    /**
+     * Settles the latency averages on renders of about 10 ms.
+     */
+    private void warmUp() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            admission.call(Operation.RENDER, () -> {
+                Thread.sleep(10);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Queues a short render behind the held slots, and waits until it is actually waiting.
+     */
+    private Future<?> queue() throws InterruptedException {
+        int before = (int) registry.get("pdf.admission.waiting").tag("operation", "render").gauge().value();
+        Future<?> future = waiters.submit(() -> admission.call(Operation.RENDER, () -> null));
+        awaitWaiting(before + 1);
+        return future;
+    }
+
+    private void awaitWaiting(int count) throws InterruptedException {
+        while (registry.get("pdf.admission.waiting").tag("operation", "render").gauge().value() != count) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void slowClient(Permit permit) throws Exception {
+        OutputStream out = permit.excludingWrites(new OutputStream() {
+            @Override
+            public void write(int b) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        out.write(new byte[1]);
+        out.flush();
+    }
+
+    private int limit() {
+        return (int) registry.get("pdf.admission.limit").tag("operation", "render").gauge().value();
+    }
+}
@@ -0,0 +1,70 @@
+package com.poc.pdf.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentHashCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private final ContentHashCache cache = new ContentHashCache(2);
+
+    @Test
+    void hashesEachRevisionOnce() throws Exception {
+        Path pdf = write("first", 1_000);
+
+        ContentHashCache.Snapshot snapshot = cache.snapshot(1L, pdf);
+
+        assertThat(snapshot.sha256()).isEqualTo(sha256("first"));
+        assertThat(snapshot.revision()).isEqualTo(PageImageCache.Revision.of(pdf));
+        assertThat(cache.snapshot(1L, pdf)).isSameAs(snapshot);
+    }
+
+    @Test
+    void rewriteIsHashedAgain() throws Exception {
+        Path pdf = write("first", 1_000);
+        ContentHashCache.Snapshot before = cache.snapshot(1L, pdf);
+
+        // Same size, only the modification time tells the revisions apart
+        write("other", 2_000);
+        ContentHashCache.Snapshot after = cache.snapshot(1L, pdf);
+
+        assertThat(after.sha256()).isEqualTo(sha256("other"));
+        assertThat(after.revision()).isNotEqualTo(before.revision());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWorkflow() throws Exception {
+        Path pdf = write("first", 1_000);
+        ContentHashCache.Snapshot first = cache.snapshot(1L, pdf);
+        ContentHashCache.Snapshot second = cache.snapshot(2L, pdf);
+        cache.snapshot(1L, pdf);
+
+        cache.snapshot(3L, pdf);
+
+        assertThat(cache.snapshot(1L, pdf)).isSameAs(first);
+        assertThat(cache.snapshot(2L, pdf)).isNotSameAs(second);
+    }
+
+    private Path write(String content, long lastModified) throws Exception {
+        Path pdf = dir.resolve("workflow.pdf");
+        Files.writeString(pdf, content);
+        Files.setLastModifiedTime(pdf, FileTime.fromMillis(lastModified));
+        return pdf;
+    }
+
+    private static String sha256(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
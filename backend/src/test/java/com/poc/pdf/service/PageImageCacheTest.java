@@ -0,0 +1,115 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.model.PageInfo;
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.service.PageImageCache.Revision;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PageImageCacheTest {
+
+    private static final Long WORKFLOW = 1L;
+    private static final List<PageInfo> PAGES = List.of(new PageInfo(0, 595, 842), new PageInfo(1, 595, 842));
+    private static final Revision OLD = new Revision(1000, 10_000);
+    private static final Revision NEW = new Revision(1500, 20_000);
+
+    private final PageImageCache cache = new PageImageCache(DataSize.ofMegabytes(1));
+
+    @Test
+    void servesPagesOfTheExactRevision() {
+        cache.putPages(WORKFLOW, OLD, PAGES);
+        cache.putImage(WORKFLOW, OLD, 0, RenderOptions.DEFAULT, new byte[]{1});
+
+        assertThat(cache.getPages(WORKFLOW, OLD)).isEqualTo(PAGES);
+        assertThat(cache.getImage(WORKFLOW, OLD, 0, RenderOptions.DEFAULT)).containsExactly(1);
+        assertThat(cache.getImage(WORKFLOW, OLD, 1, RenderOptions.DEFAULT)).isNull();
+    }
+
+    @Test
+    void staleReaderDoesNotEvictNewerRevision() {
+        cache.putPages(WORKFLOW, NEW, PAGES);
+        cache.putImage(WORKFLOW, NEW, 0, RenderOptions.DEFAULT, new byte[]{2});
+
+        assertThat(cache.getPages(WORKFLOW, OLD)).isNull();
+        assertThat(cache.getImage(WORKFLOW, OLD, 0, RenderOptions.DEFAULT)).isNull();
+        cache.putImage(WORKFLOW, OLD, 1, RenderOptions.DEFAULT, new byte[]{1});
+
+        assertThat(cache.getImage(WORKFLOW, NEW, 0, RenderOptions.DEFAULT)).containsExactly(2);
+        assertThat(cache.getImage(WORKFLOW, NEW, 1, RenderOptions.DEFAULT)).isNull();
+    }
+
+    @Test
+    void olderLayoutDoesNotReplaceNewerRevision() {
+        cache.putPages(WORKFLOW, NEW, PAGES);
+        cache.putImage(WORKFLOW, NEW, 0, RenderOptions.DEFAULT, new byte[]{2});
+
+        cache.putPages(WORKFLOW, OLD, List.of(new PageInfo(0, 100, 100)));
+
+        assertThat(cache.getPages(WORKFLOW, NEW)).isEqualTo(PAGES);
+        assertThat(cache.getImage(WORKFLOW, NEW, 0, RenderOptions.DEFAULT)).containsExactly(2);
+    }
+
+    @Test
+    void newerRevisionDropsOlderEntry() {
+        cache.putPages(WORKFLOW, OLD, PAGES);
+        cache.putImage(WORKFLOW, OLD, 0, RenderOptions.DEFAULT, new byte[]{1});
+
+        assertThat(cache.getPages(WORKFLOW, NEW)).isNull();
+        assertThat(cache.getPages(WORKFLOW, OLD)).isNull();
+
+        cache.putPages(WORKFLOW, NEW, PAGES);
+        assertThat(cache.getPages(WORKFLOW, NEW)).isEqualTo(PAGES);
+        assertThat(cache.getImage(WORKFLOW, NEW, 0, RenderOptions.DEFAULT)).isNull();
+    }
+
+    @Test
+    void carryForwardKeepsCleanPagesOnly() {
+        cache.putPages(WORKFLOW, OLD, PAGES);
+        cache.putImage(WORKFLOW, OLD, 0, RenderOptions.DEFAULT, new byte[]{1});
+        cache.putImage(WORKFLOW, OLD, 1, RenderOptions.DEFAULT, new byte[]{1});
+
+        cache.carryForward(WORKFLOW, OLD, NEW, Set.of(1));
+
+        assertThat(cache.getPages(WORKFLOW, NEW)).isEqualTo(PAGES);
+        assertThat(cache.getImage(WORKFLOW, NEW, 0, RenderOptions.DEFAULT)).containsExactly(1);
+        assertThat(cache.getImage(WORKFLOW, NEW, 1, RenderOptions.DEFAULT)).isNull();
+    }
+
+    @Test
+    void carryForwardFromAnotherRevisionDropsTheEntry() {
+        cache.putPages(WORKFLOW, OLD, PAGES);
+        cache.putImage(WORKFLOW, OLD, 0, RenderOptions.DEFAULT, new byte[]{1});
+
+        cache.carryForward(WORKFLOW, new Revision(900, 5_000), NEW, Set.of());
+
+        assertThat(cache.getPages(WORKFLOW, NEW)).isNull();
+        assertThat(cache.getPages(WORKFLOW, OLD)).isNull();
+    }
+
+    @Test
+    void renderOfThePreviousRevisionKeepsCarriedPages() {
+        cache.putPages(WORKFLOW, OLD, PAGES);
+        cache.putImage(WORKFLOW, OLD, 0, RenderOptions.DEFAULT, new byte[]{1});
+        cache.carryForward(WORKFLOW, OLD, NEW, Set.of(1));
+
+        // A render that started before the signature finishes afterwards
+        cache.putPages(WORKFLOW, OLD, PAGES);
+        cache.putImage(WORKFLOW, OLD, 1, RenderOptions.DEFAULT, new byte[]{9});
+
+        assertThat(cache.getImage(WORKFLOW, NEW, 0, RenderOptions.DEFAULT)).containsExactly(1);
+        assertThat(cache.getImage(WORKFLOW, NEW, 1, RenderOptions.DEFAULT)).isNull();
+    }
+
+    @Test
+    void sameTimestampOrdersRevisionsBySize() {
+        Revision grown = new Revision(OLD.size() + 1, OLD.lastModified());
+        assertThat(grown.isNewerThan(OLD)).isTrue();
+        assertThat(OLD.isNewerThan(grown)).isFalse();
+        assertThat(OLD.isNewerThan(OLD)).isFalse();
+    }
+}
@@ -0,0 +1,108 @@
+package com.poc.pdf.service;
+
+import com.poc.pdf.TestPdfs;
+import com.poc.pdf.entity.WorkflowStatus;
+import com.poc.pdf.model.RenderOptions;
+import com.poc.pdf.model.SignRequest;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class WorkflowServiceTest {
+
+    @TempDir
+    static Path storageDir;
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        registry.add("app.pdf.storage-dir", storageDir::toString);
+    }
+
+    @Autowired
+    private WorkflowService workflowService;
+
+    @Test
+    void concurrentSignaturesOfOneWorkflowRunOneAfterTheOther() throws Exception {
+        Long id = createWorkflow();
+        CountDownLatch start = new CountDownLatch(1);
+        Callable<Boolean> signA = () -> {
+            start.await();
+            try {
+                workflowService.sign(id, new SignRequest("SIGNER_A", Map.of("Nom", "X")));
+                return true;
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = pool.submit(signA);
+            Future<Boolean> second = pool.submit(signA);
+            start.countDown();
+            assertThat(List.of(first.get(), second.get())).containsExactlyInAnyOrder(true, false);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        WorkflowService.PdfFile pdf = workflowService.getPdfFile(id);
+        assertThat(pdf.status()).isEqualTo(WorkflowStatus.SIGNER_B_PENDING);
+        try (PDDocument document = Loader.loadPDF(pdf.path().toFile())) {
+            assertThat(document.getSignatureDictionaries()).hasSize(1);
+        }
+        try (Stream<Path> files = Files.list(storageDir)) {
+            assertThat(files.map(file -> file.getFileName().toString())).noneMatch(name -> name.startsWith("signing-"));
+        }
+    }
+
+    @Test
+    void signaturesOnlyAppendToThePreviousRevision() throws Exception {
+        Long id = createWorkflow();
+        byte[] prepared = Files.readAllBytes(workflowService.getPdfFile(id).path());
+
+        workflowService.sign(id, new SignRequest("SIGNER_A", Map.of("Nom", "X")));
+        byte[] signed = Files.readAllBytes(workflowService.getPdfFile(id).path());
+
+        assertThat(signed.length).isGreaterThan(prepared.length);
+        assertThat(java.util.Arrays.copyOf(signed, prepared.length)).isEqualTo(prepared);
+    }
+
+    @Test
+    void revisionTagChangesWithTheWorkflowOnly() throws Exception {
+        Long id = createWorkflow();
+        String prepared = workflowService.getRevisionTag(id);
+
+        assertThat(workflowService.getRevisionTag(id)).isEqualTo(prepared);
+        assertThat(workflowService.getPdfFile(id).revisionTag()).isEqualTo(prepared);
+
+        workflowService.sign(id, new SignRequest("SIGNER_A", Map.of("Nom", "X")));
+        String signed = workflowService.getRevisionTag(id);
+
+        assertThat(signed).isNotEqualTo(prepared);
+        assertThat(workflowService.getPdfFile(id).revisionTag()).isEqualTo(signed);
+    }
+
+    private Long createWorkflow() throws Exception {
+        return workflowService.createWorkflow(TestPdfs.upload(storageDir.resolve("uploads"), 2), "doc.pdf",
+                TestPdfs.FIELDS, false, RenderOptions.DEFAULT).id();
+    }
+}
@@ -40,11 +40,18 @@ interface CustomField {
   assignedTo: "SIGNER_A" | "SIGNER_B";
 }
 
+interface PageInfo {
+  index: number;
+  width: number;
+  height: number;
+}
+
 interface ExtractionResult {
   fileName: string;
   totalFields: number;
   fields: PdfField[];
-  pagesBase64: string[];
+  pages: PageInfo[];
+  sessionId: string;
 }
 
 interface WorkflowData {
@@ -64,11 +71,22 @@ interface WorkflowData {
     page: number;
     pageHeight: number;
   }[];
-  pagesBase64: string[];
+  pages: PageInfo[];
+  updatedAt: string;
+}
+
+interface WorkflowEvent {
+  workflowId: number;
+  status: string;
+  fieldValues: Record<string, string | null> | null;
+  updatedAt: string;
 }
 
 type Status = "idle" | "loading" | "success" | "error";
 
+// updatedAt is an ISO local date-time, whose text sorts like the instant it denotes
+const isOlder = (updatedAt: string, than: string) => updatedAt < than;
+
 const DEFAULT_SIZES: Record<CustomField["type"], { width: number; height: number }> = {
   TEXT: { width: 200, height: 20 },
   CHECKBOX: { width: 15, height: 15 },
@@ -102,10 +120,6 @@ function App() {
   const [creatingWorkflow, setCreatingWorkflow] = useState(false);
   const [signerView, setSignerView] = useState<"SIGNER_A" | "SIGNER_B" | null>(null);
 
-  const PDF_DPI = 72;
-  const RENDER_DPI = 150;
-  const BASE_SCALE = RENDER_DPI / PDF_DPI;
-
   // Auto-switch to generated tab after generation
   useEffect(() => {
     if (generatedPdfUrl) {
@@ -113,13 +127,58 @@ function App() {
     }
   }, [generatedPdfUrl]);
 
-  const handleImageLoad = useCallback(
-    (pageIndex: number, e: React.SyntheticEvent<HTMLImageElement>) => {
-      const img = e.currentTarget;
-      const displayScale = (img.clientWidth / img.naturalWidth) * BASE_SCALE;
-      setScales((prev) => ({ ...prev, [pageIndex]: displayScale }));
+  // Fetches the workflow once, without pages, unless a newer state arrived meanwhile
+  const refreshWorkflow = useCallback(async () => {
+    if (!workflowId) return;
+    try {
+      const response = await fetch(`http://localhost:8080/api/workflow/${workflowId}?includePages=false`);
+      if (!response.ok) throw new Error(`Erreur serveur: ${response.status}`);
+      const data: WorkflowData = await response.json();
+      setWorkflowData((prev) => (prev && prev.id === data.id && isOlder(data.updatedAt, prev.updatedAt) ? prev : data));
+    } catch (err) {
+      setError(err instanceof Error ? err.message : "Erreur inconnue");
+    }
+  }, [workflowId]);
+
+  // Follow status and field value changes pushed by the server instead of refetching the workflow
+  useEffect(() => {
+    if (!workflowId) return;
+    const source = new EventSource(`http://localhost:8080/api/workflow/${workflowId}/events`);
+    let disconnected = false;
+    source.onopen = () => {
+      disconnected = false;
+    };
+    // Changes may be missed while the stream is down: catch up once per outage
+    source.onerror = () => {
+      if (disconnected) return;
+      disconnected = true;
+      void refreshWorkflow();
+    };
+    source.addEventListener("workflow", (e) => {
+      const event: WorkflowEvent = JSON.parse((e as MessageEvent<string>).data);
+      const values = event.fieldValues;
+      setWorkflowData((prev) =>
+        prev && prev.id === event.workflowId && !isOlder(event.updatedAt, prev.updatedAt)
+          ? {
+              ...prev,
+              status: event.status,
+              updatedAt: event.updatedAt,
+              fields: values
+                ? prev.fields.map((f) => (f.name in values ? { ...f, value: values[f.name] } : f))
+                : prev.fields,
+            }
+          : prev,
+      );
+    });
+    return () => source.close();
+  }, [workflowId, refreshWorkflow]);
+
+  const handlePageLoad = useCallback(
+    (page: PageInfo, e: React.SyntheticEvent<HTMLImageElement>) => {
+      const displayScale = e.currentTarget.clientWidth / page.width;
+      setScales((prev) => ({ ...prev, [page.index]: displayScale }));
     },
-    [BASE_SCALE],
+    [],
   );
 
   const generatePdf = async () => {
@@ -170,7 +229,7 @@ function App() {
     );
 
     try {
-      const response = await fetch("http://localhost:8080/api/workflow", {
+      const response = await fetch("http://localhost:8080/api/workflow?includePages=false", {
         method: "POST",
         body: formData,
       });
@@ -186,18 +245,6 @@ function App() {
     }
   };
 
-  const refreshWorkflow = async () => {
-    if (!workflowId) return;
-    try {
-      const response = await fetch(`http://localhost:8080/api/workflow/${workflowId}`);
-      if (!response.ok) throw new Error(`Erreur serveur: ${response.status}`);
-      const data: WorkflowData = await response.json();
-      setWorkflowData(data);
-    } catch (err) {
-      setError(err instanceof Error ? err.message : "Erreur inconnue");
-    }
-  };
-
   const downloadWorkflowPdf = async () => {
     if (!workflowId) return;
     try {
@@ -233,7 +280,7 @@ function App() {
     formData.append("file", file);
 
     try {
-      const response = await fetch("http://localhost:8080/api/pdf/extract", {
+      const response = await fetch("http://localhost:8080/api/pdf/extract?session=true", {
         method: "POST",
         body: formData,
       });
@@ -305,7 +352,7 @@ function App() {
 
     const size = DEFAULT_SIZES[fieldType];
     const pageField = result?.fields.find((f) => f.page === pageIndex);
-    const pageHeight = pageField?.pageHeight ?? (img.naturalHeight / BASE_SCALE);
+    const pageHeight = pageField?.pageHeight ?? result?.pages[pageIndex]?.height ?? 0;
 
     const pdfX = cssX / scale;
     const pdfY = pageHeight - (cssY / scale) - size.height;
@@ -374,7 +421,8 @@ function App() {
               workflowId={workflowData.id}
               signer={signerView}
               fields={workflowData.fields}
-              pagesBase64={workflowData.pagesBase64}
+              pages={workflowData.pages}
+              revision={workflowData.updatedAt}
               onBack={() => setSignerView(null)}
               onSigned={async () => {
                 setSignerView(null);
@@ -515,7 +563,7 @@ function App() {
 
                 <TabsContent value="preview" className="mt-4">
                   <div className="space-y-4">
-                    {result.pagesBase64.map((page, i) => (
+                    {result.pages.map((page, i) => (
                       <div
                         key={i}
                         className={`relative rounded-md transition-shadow ${
@@ -529,9 +577,11 @@ function App() {
                       >
                         <img
                           className="w-full rounded-md border"
-                          src={`data:image/png;base64,${page}`}
+                          style={{ aspectRatio: `${page.width} / ${page.height}` }}
+                          src={`http://localhost:8080/api/pdf/sessions/${result.sessionId}/pages/${i}`}
+                          loading="lazy"
                           alt={`Page ${i + 1}`}
-                          onLoad={(e) => handleImageLoad(i, e)}
+                          onLoad={(e) => handlePageLoad(page, e)}
                         />
                         {scales[i] != null &&
                           result.fields
@@ -584,13 +634,15 @@ function App() {
                 {workflowData && (
                   <TabsContent value="signature" className="mt-4">
                     <div className="space-y-4">
-                      {workflowData.pagesBase64.map((page, i) => (
+                      {workflowData.pages.map((page, i) => (
                         <div key={i} className="relative">
                           <img
                             className="w-full rounded-md border"
-                            src={`data:image/png;base64,${page}`}
+                            style={{ aspectRatio: `${page.width} / ${page.height}` }}
+                            src={`http://localhost:8080/api/workflow/${workflowData.id}/pages/${i}?v=${encodeURIComponent(workflowData.updatedAt)}`}
+                            loading="lazy"
                             alt={`Page ${i + 1}`}
-                            onLoad={(e) => handleImageLoad(i, e)}
+                            onLoad={(e) => handlePageLoad(page, e)}
                           />
                           {scales[i] != null &&
                             workflowData.fields
@@ -18,16 +18,23 @@ interface WorkflowField {
   pageHeight: number;
 }
 
+interface PageInfo {
+  index: number;
+  width: number;
+  height: number;
+}
+
 interface SignerViewProps {
   workflowId: number;
   signer: "SIGNER_A" | "SIGNER_B";
   fields: WorkflowField[];
-  pagesBase64: string[];
+  pages: PageInfo[];
+  revision: string;
   onBack: () => void;
   onSigned: () => void;
 }
 
-export function SignerView({ workflowId, signer, fields, pagesBase64, onBack, onSigned }: SignerViewProps) {
+export function SignerView({ workflowId, signer, fields, pages, revision, onBack, onSigned }: SignerViewProps) {
   const [fieldValues, setFieldValues] = useState<Record<string, string>>(() => {
     const initial: Record<string, string> = {};
     fields.filter((f) => f.assignedTo === signer).forEach((f) => {
@@ -38,23 +45,18 @@ export function SignerView({ workflowId, signer, fields, pagesBase64, onBack, on
   const [signing, setSigning] = useState(false);
   const [scales, setScales] = useState<Record<number, number>>({});
 
-  const PDF_DPI = 72;
-  const RENDER_DPI = 150;
-  const BASE_SCALE = RENDER_DPI / PDF_DPI;
-
   const handleImageLoad = useCallback(
-    (pageIndex: number, e: React.SyntheticEvent<HTMLImageElement>) => {
-      const img = e.currentTarget;
-      const displayScale = (img.clientWidth / img.naturalWidth) * BASE_SCALE;
-      setScales((prev) => ({ ...prev, [pageIndex]: displayScale }));
+    (page: PageInfo, e: React.SyntheticEvent<HTMLImageElement>) => {
+      const displayScale = e.currentTarget.clientWidth / page.width;
+      setScales((prev) => ({ ...prev, [page.index]: displayScale }));
     },
-    [BASE_SCALE],
+    [],
   );
 
   const handleSign = async () => {
     setSigning(true);
     try {
-      const response = await fetch(`http://localhost:8080/api/workflow/${workflowId}/sign`, {
+      const response = await fetch(`http://localhost:8080/api/workflow/${workflowId}/sign?includePages=false`, {
         method: "POST",
         headers: { "Content-Type": "application/json" },
         body: JSON.stringify({
@@ -94,13 +96,15 @@ export function SignerView({ workflowId, signer, fields, pagesBase64, onBack, on
       </div>
 
       <div className="space-y-4">
-        {pagesBase64.map((page, i) => (
+        {pages.map((page, i) => (
           <div key={i} className="relative">
             <img
               className="w-full rounded-md border"
-              src={`data:image/png;base64,${page}`}
+              style={{ aspectRatio: `${page.width} / ${page.height}` }}
+              src={`http://localhost:8080/api/workflow/${workflowId}/pages/${i}?v=${encodeURIComponent(revision)}`}
+              loading="lazy"
               alt={`Page ${i + 1}`}
-              onLoad={(e) => handleImageLoad(i, e)}
+              onLoad={(e) => handleImageLoad(page, e)}
             />
             {scales[i] != null &&
               fields